@@ -10,39 +10,160 @@
  - Mandelbrot and Julia sets (toggle with M/J). For Julia, click to set 'c'.
  - Mouse-wheel zoom centered on cursor, arrow keys to pan, +/- to change max iterations
  - Responsive: multithreaded renderer that cancels previous renders when you interact
+ - Kernels: -Dfractal.kernel=scalar (default) or vector, the Vector API kernel in
+   VectorKernel.java (see there to build and run it); -Dfractal.cycles=false disables
+   periodicity detection; -Dfractal.engine=subdivide renders the full-resolution pass by
+   Mariani-Silver rectangle subdivision. Compare them on reference views with
+     java FractalVisualizer --bench
+   and every kernel and color-writing path across views and iteration limits with
+     java FractalVisualizer --bench-matrix
+ - Frames are recycled through a small pool (-Dfractal.framePool=N, 0 to disable); a scripted
+   drag storm reports allocation and GC with
+     java FractalVisualizer --soak
+ - Headless posters of any size, rendered in strips and streamed to a PNG:
+     java FractalVisualizer --render poster.png --size 32000x32000 --center -0.5,0 --scale 3 --iter 2000
+ - Tiles, tasks and renders are recorded as JDK Flight Recorder events (category Fractal):
+     java -XX:StartFlightRecording=filename=fractal.jfr FractalVisualizer
+ - Deep zooms iterate offsets from a reference orbit and skip iterations through a bilinear
+   approximation table (-Dfractal.bla=false disables it), after starting every pixel past the
+   iterations a per-frame series approximation covers (-Dfractal.series=false); compare against
+   plain stepping, and glitched pixels against BigDecimal, with
+     java FractalVisualizer --check-perturbation
+ - Pixels the deep reference does not fit are rebased onto secondary references placed at
+   nearby minibrot nuclei, up to -Dfractal.references=N per frame (1 disables it)
 */
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
 
 /*
 * Main class: JPanel with rendering and interaction
 */
 public class FractalVisualizer extends JPanel {
-    // Canvas size
+    // Default canvas size (the window's preferred size, posters and benchmarks). On screen the
+    // render size follows the component and the device scale, see renderWidth.
     static final int W = 900;
     static final int H = 600;
 
     // Render parameters (volatile for UI thread safety)
     volatile double centerX = -0.5;
     volatile double centerY = 0.0;
-    volatile double scale = 3.0; // width of view in complex plane
+    // exact center, kept alongside the double one so deep zooms do not lose the position
+    volatile BigDecimal hpCenterX = new BigDecimal(-0.5);
+    volatile BigDecimal hpCenterY = BigDecimal.ZERO;
+    volatile FloatExp scale = FloatExp.of(3.0); // width of view in complex plane, of any depth
     volatile int maxIter = 400;
     volatile boolean useJulia = false;
     volatile double juliaCr = -0.8, juliaCi = 0.156;
+    final List<Palette> palettes = Palette.available();
+    volatile int paletteIndex = palettes.size() - 1; // a user palette, when given, comes last
+    volatile ColorTable colors; // lookup table for the current palette and maxIter
+    volatile int colorPhase; // palette rotation in table entries, advanced by color cycling
 
     // Rendering
-    volatile BufferedImage image;
-    final ExecutorService pool;
+    volatile IterFrame frame; // the frame on screen
+    volatile IterFrame lastFull; // the last full-resolution frame published, the base for panning
+    private final Object frameLock = new Object(); // swaps of frame and lastFull, see show
+    // -Dfractal.framePool=N keeps up to N idle frames for reuse (0 allocates a frame per render)
+    final FramePool frames = new FramePool(Integer.getInteger("fractal.framePool", 4));
+    final Telemetry telemetry = new Telemetry(); // per tile, task and render; see Telemetry
+    final RenderScheduler pool;
     final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
     final AtomicInteger renderId = new AtomicInteger(0);
+    final AtomicBoolean recoloring = new AtomicBoolean(), recolorPending = new AtomicBoolean();
+    final Kernel kernel = Kernel.fromProperty();
+    // -Dfractal.engine=subdivide renders the full-resolution pass with Mariani-Silver subdivision
+    final boolean subdivide = "subdivide".equalsIgnoreCase(System.getProperty("fractal.engine", "bands"));
+    volatile double lastMpixPerSec; // throughput of the last published full-resolution render
+    volatile String lastEngine = kernel.name().toLowerCase(); // what escaped the last published render, see View.engine
+    volatile int lastReferences; // reference orbits the last published render used, 0 above perturbation depth
+    volatile double lastInteriorSkipped; // fraction of pixels the cardioid/bulb test answered without iterating
+    volatile double lastFilled; // fraction of pixels the subdivision engine filled without iterating
+    volatile double lastReused; // fraction of pixels a pan copied from the previous frame
+    volatile double lastFirstPixelMs; // from an interaction to the first full-resolution pixel in the displayed image
+
+    // below this view width double coordinates run out of bits and perturbation takes over. With
+    // -Dfractal.doubleDouble=true double-double coordinates cover the range down to 1e-24 first;
+    // they give the same images as perturbation at a higher cost, so that tier is opt-in
+    static final double DEEP_SCALE = 1e-13;
+    static final double PERTURBATION_SCALE =
+            Boolean.parseBoolean(System.getProperty("fractal.doubleDouble", "false")) ? 1e-24 : DEEP_SCALE;
+    // below this view width pixel offsets approach the double's 1e-308 floor; the perturbation
+    // deltas are then iterated as FloatExp until they have grown back into double range
+    static final double FLOATEXP_SCALE = 1e-290;
+    static final int FLOATEXP_EXIT = -900; // binary exponent at which a delta is handed back to doubles
+    // -Dfractal.bla=false iterates every perturbation step instead of jumping through the BLA table
+    static final boolean BLA = Boolean.parseBoolean(System.getProperty("fractal.bla", "true"));
+    // -Dfractal.series=false starts every pixel at iteration 0 instead of after the series approximation
+    static final boolean SERIES = Boolean.parseBoolean(System.getProperty("fractal.series", "true"));
+    // -Dfractal.references=N caps the reference orbits of a deep frame: pixels found glitched
+    // against one are rebased onto the next. 1 keeps the center's alone and skips the glitch test
+    static final int REFERENCES = Math.max(1, Integer.getInteger("fractal.references", 32));
+    // -Dfractal.cycles=false turns off periodicity detection in the escape loop
+    static final boolean CYCLE_DETECTION = Boolean.parseBoolean(System.getProperty("fractal.cycles", "true"));
 
     // Interaction
     Point lastMouse;
+    final javax.swing.Timer colorCycle = new javax.swing.Timer(40, e -> {
+        colorPhase = (colorPhase + ColorTable.SIZE / 256) & (ColorTable.SIZE - 1);
+        recolor();
+    });
+    // screen area touched by tiles since the last repaint; flushed at a fixed frame rate so a
+    // burst of small tiles costs one repaint per frame instead of one per tile
+    static final int REPAINT_FPS = 60;
+    private Rectangle dirty; // guarded by this timer
+    final javax.swing.Timer repaintTimer = new javax.swing.Timer(1000 / REPAINT_FPS, e -> {
+        pace();
+        flushDirty();
+    });
+
+    // Render requests. Input handlers only update the view and post a request. A render for the
+    // latest view starts right away if the last one started at least a frame period ago and has
+    // shown its first pixels; otherwise a later repaint tick starts it, so the states of a burst
+    // of events merge into one render (latest wins). -Dfractal.pacing=false renders on every
+    // event instead.
+    static final boolean PACING = Boolean.parseBoolean(System.getProperty("fractal.pacing", "true"));
+    static final long STALL_NANOS = 250_000_000L; // stop waiting for a render that shows nothing
+    private long requestedAt; // System.nanoTime() of the oldest input not rendered yet, 0 if none; EDT only
+    private long startedAt; // when the last render was started; EDT only
+    private final long[] inputAt = new long[64]; // input time of render id, indexed by id mod 64
+    final AtomicInteger shownId = new AtomicInteger(); // newest render that has put pixels on screen
+    volatile double lastInputLatencyMs; // from an input event to the first pixels of its render
+    final LatencyHistogram inputLatency = new LatencyHistogram();
 
     // UI tuning
     final double zoomFactorPerNotch = 1.2;
@@ -53,21 +174,14 @@ public class FractalVisualizer extends JPanel {
         setFocusable(true);
         requestFocusInWindow();
 
-        pool = Executors.newFixedThreadPool(threads);
-        image = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+        pool = new RenderScheduler(threads, telemetry);
+        frame = new IterFrame(null);
+        repaintTimer.start();
 
         // Mouse wheel zoom centered at mouse
         addMouseWheelListener(e -> {
-            int notches = e.getWheelRotation();
-            double mouseRe = screenToRe(e.getX());
-            double mouseIm = screenToIm(e.getY());
-            double oldScale = scale;
-            if(notches < 0) scale /= Math.pow(zoomFactorPerNotch, -notches);
-            else scale *= Math.pow(zoomFactorPerNotch, notches);
-            // adjust center so mouse point stays fixed (mathematically exact)
-            centerX = mouseRe + (centerX - mouseRe) * (scale / oldScale);
-            centerY = mouseIm + (centerY - mouseIm) * (scale / oldScale);
-            triggerRender();
+            zoomAt(e.getX(), e.getY(), Math.pow(zoomFactorPerNotch, e.getWheelRotation()));
+            requestRender();
         });
 
         // Click to set Julia parameter (when in Julia mode)
@@ -77,7 +191,7 @@ public class FractalVisualizer extends JPanel {
                 if(useJulia && SwingUtilities.isLeftMouseButton(e)){
                     juliaCr = screenToRe(e.getX());
                     juliaCi = screenToIm(e.getY());
-                    triggerRender();
+                    requestRender();
                 }
                 lastMouse = e.getPoint();
             }
@@ -90,11 +204,10 @@ public class FractalVisualizer extends JPanel {
                 if(lastMouse != null){
                     int dx = e.getX() - lastMouse.x;
                     int dy = e.getY() - lastMouse.y;
-                    // translate pixels to complex plane units
-                    centerX -= dx * (scale / W);
-                    centerY -= dy * (scale / W);
+                    // translate pixels to view widths
+                    moveCenter(-dx / (double)canvasWidth(), -dy / (double)canvasWidth());
                     lastMouse = e.getPoint();
-                    triggerRender();
+                    requestRender();
                 }
             }
         });
@@ -105,158 +218,3106 @@ public class FractalVisualizer extends JPanel {
             public void keyPressed(KeyEvent e){
                 switch(e.getKeyCode()){
                     case KeyEvent.VK_LEFT:
-                        centerX -= panFraction * scale; triggerRender(); break;
+                        moveCenter(-panFraction, 0); requestRender(); break;
                     case KeyEvent.VK_RIGHT:
-                        centerX += panFraction * scale; triggerRender(); break;
+                        moveCenter(panFraction, 0); requestRender(); break;
                     case KeyEvent.VK_UP:
-                        centerY -= panFraction * scale; triggerRender(); break;
+                        moveCenter(0, -panFraction); requestRender(); break;
                     case KeyEvent.VK_DOWN:
-                        centerY += panFraction * scale; triggerRender(); break;
+                        moveCenter(0, panFraction); requestRender(); break;
                     case KeyEvent.VK_PLUS: case KeyEvent.VK_EQUALS: // +
-                        maxIter = Math.min(2000, (int)(maxIter * 1.25)); triggerRender(); break;
+                        // deep zooms need far more iterations than the shallow views
+                        maxIter = Math.min(100000, (int)(maxIter * 1.25)); requestRender(); break;
                     case KeyEvent.VK_MINUS:
-                        maxIter = Math.max(50, (int)(maxIter / 1.25)); triggerRender(); break;
+                        maxIter = Math.max(50, (int)(maxIter / 1.25)); requestRender(); break;
                     case KeyEvent.VK_M:
-                        useJulia = false; triggerRender(); break;
+                        useJulia = false; requestRender(); break;
                     case KeyEvent.VK_J:
-                        useJulia = true; triggerRender(); break;
+                        useJulia = true; requestRender(); break;
+                    case KeyEvent.VK_P:
+                        paletteIndex = (paletteIndex + 1) % palettes.size(); recolor(); break;
+                    case KeyEvent.VK_C:
+                        if(colorCycle.isRunning()) colorCycle.stop(); else colorCycle.start();
+                        break;
                     case KeyEvent.VK_SPACE:
                         // reset
-                        centerX = -0.5; centerY = 0.0; scale = 3.0; maxIter = 400; useJulia = false; triggerRender(); break;
+                        centerX = -0.5; centerY = 0.0; hpCenterX = new BigDecimal(-0.5); hpCenterY = BigDecimal.ZERO;
+                        scale = FloatExp.of(3.0); maxIter = 400; useJulia = false; requestRender(); break;
                 }
             }
         });
 
+        // a new size, or a move to a screen with another scale factor, needs a new render
+        addComponentListener(new ComponentAdapter(){
+            @Override
+            public void componentResized(ComponentEvent e){
+                requestRender();
+            }
+        });
+        addPropertyChangeListener("graphicsConfiguration", e -> requestRender());
+
         // initial render
         triggerRender();
     }
 
+    // component size in user space; the preferred size until the panel is laid out
+    int canvasWidth(){
+        int w = getWidth();
+        return w > 0 ? w : W;
+    }
+
+    int canvasHeight(){
+        int h = getHeight();
+        return h > 0 ? h : H;
+    }
+
+    // device pixels per user-space pixel: 2 on a typical HiDPI screen
+    double deviceScale(){
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        return gc == null ? 1 : gc.getDefaultTransform().getScaleX();
+    }
+
+    // render size: one sample per device pixel, so HiDPI screens get a sharp image
+    int renderWidth(){
+        return Math.max(1, (int)Math.round(canvasWidth() * deviceScale()));
+    }
+
+    int renderHeight(){
+        return Math.max(1, (int)Math.round(canvasHeight() * deviceScale()));
+    }
+
     // map pixel x to real
     double screenToRe(int sx){
-        return centerX + ( (sx - W/2.0) * (scale / W) );
+        return centerX + ( (sx - canvasWidth()/2.0) * (scale.toDouble() / canvasWidth()) );
     }
-    // map pixel y to imag (note y increases downward)
+    // map pixel y to imag (note y increases downward); pixels are square
     double screenToIm(int sy){
-        double aspect = (double)H / W;
-        return centerY + ( (sy - H/2.0) * (scale * aspect / H) );
+        return centerY + ( (sy - canvasHeight()/2.0) * (scale.toDouble() / canvasWidth()) );
+    }
+
+    // shift the center by fx, fy view widths, exactly, whatever the depth
+    void moveCenter(double fx, double fy){
+        MathContext mc = precisionFor(scale);
+        BigDecimal width = scale.toBigDecimal();
+        hpCenterX = hpCenterX.add(new BigDecimal(fx).multiply(width, mc)).round(mc);
+        hpCenterY = hpCenterY.add(new BigDecimal(fy).multiply(width, mc)).round(mc);
+        centerX = hpCenterX.doubleValue();
+        centerY = hpCenterY.doubleValue();
+    }
+
+    // scale the view by ratio (below 1 zooms in) keeping the point under canvas pixel (sx, sy) fixed
+    void zoomAt(int sx, int sy, double ratio){
+        final double fx = (sx - canvasWidth()/2.0) / canvasWidth(), fy = (sy - canvasHeight()/2.0) / canvasWidth();
+        moveCenter(fx * (1 - ratio), fy * (1 - ratio));
+        scale = scale.mul(ratio);
+    }
+
+    // enough decimal digits to resolve a pixel of a view of width sc, plus guard digits
+    static MathContext precisionFor(FloatExp sc){
+        return new MathContext(Math.max(20, (int)Math.ceil(-sc.log10()) + 20));
+    }
+
+    // ask for a render of the current view; see pace
+    void requestRender(){
+        if(!PACING){
+            triggerRender();
+            return;
+        }
+        if(requestedAt == 0) requestedAt = System.nanoTime();
+        pace();
+    }
+
+    // start the pending request if the frame pacing allows it
+    private void pace(){
+        if(requestedAt == 0) return;
+        final long now = System.nanoTime();
+        if(now - startedAt < 1_000_000_000L / REPAINT_FPS) return;
+        if(shownId.get() < renderId.get() && now - startedAt < STALL_NANOS) return;
+        final long t = requestedAt;
+        requestedAt = 0;
+        startedAt = now;
+        triggerRender(t);
+    }
+
+    // the first pixels of render id are in the displayed image. They answer every input since
+    // the last render shown, including those of renders superseded before they showed anything,
+    // so the latency is taken from the oldest of them.
+    void shown(int id){
+        final int prev = shownId.getAndAccumulate(id, Math::max);
+        if(prev >= id) return;
+        final int oldest = Math.max(prev + 1, id - inputAt.length + 1);
+        final double ms = (System.nanoTime() - inputAt[oldest & (inputAt.length - 1)]) / 1e6;
+        lastInputLatencyMs = ms;
+        inputLatency.add(ms);
     }
 
-    // Trigger a new render: cancel previous by incrementing renderId
     void triggerRender(){
+        triggerRender(System.nanoTime());
+    }
+
+    // Trigger a new render: cancel previous by incrementing renderId. inputNanos is when the
+    // input it answers arrived.
+    void triggerRender(long inputNanos){
         final int id = renderId.incrementAndGet();
-        final double cX = centerX, cY = centerY, sc = scale;
-        final int iters = maxIter;
-        final boolean julia = useJulia;
-        final double jc = juliaCr, ji = juliaCi;
+        inputAt[id & (inputAt.length - 1)] = inputNanos;
+        pool.purgeBefore(id); // drop the queued tiles of every older render
+        final View view = new View(centerX, centerY, hpCenterX, hpCenterY, scale, renderWidth(), renderHeight(),
+                maxIter, useJulia, juliaCr, juliaCi);
+        view.cancelled = () -> renderId.get() != id;
+        telemetry.begin(id, view, kernel);
+        pool.whenDrained(id, () -> telemetry.end(id));
+
+        // a pure pan only computes the strips it exposed
+        final IterFrame prev = retainLastFull();
+        if(prev != null){
+            if(submitPan(id, view, prev)) return;
+            prev.release();
+        }
+        // a zoom shows the frame on screen resampled right away, then refines it tile by tile
+        final IterFrame shown = retainShown();
+        try {
+            if(shown.view != null && submitZoom(id, view, shown)) return;
+        } finally {
+            shown.release();
+        }
+
+        // 8x8 blocks first, then each finer stage fills in only the samples the coarser ones lack
+        submitStage(id, view, 0, null, System.nanoTime(), 0);
+    }
+
+    // lookup table for the current palette and maxIter, rebuilt only when one of them changed
+    ColorTable colorTable(){
+        ColorTable t = colors;
+        Palette p = palettes.get(paletteIndex);
+        if(t == null || t.palette != p || t.maxIter != maxIter){
+            colors = t = new ColorTable(p, maxIter);
+        }
+        return t;
+    }
 
-        // Render preview (subsample 4) y full (subsample 1), cada uno en su BufferedImage
-        submitRender(id, cX, cY, sc, iters, julia, jc, ji, 4);
-        submitRender(id, cX, cY, sc, iters, julia, jc, ji, 1);
+    // Repaint the frame on screen with the current palette and phase; nothing is escaped again
+    void recolor(){
+        recolorPending.set(true);
+        if(!recoloring.compareAndSet(false, true)) return; // the running pass picks the request up
+        recolorPending.set(false);
+        final IterFrame f = retainShown();
+        colorizeAsync(RenderScheduler.UNTAGGED, f, colorTable(), colorPhase, () -> {
+            f.release();
+            recoloring.set(false);
+            SwingUtilities.invokeLater(this::repaint);
+            if(recolorPending.get()) recolor();
+        });
     }
 
-    void submitRender(int id, double cX, double cY, double sc, int iters, boolean julia, double jc, double ji, int subsample){
-        final int tileHeight = Math.max(8, H / (threads * 4));
-        final int tileCount = (H + tileHeight - 1) / tileHeight;
+    // colorize a whole frame in parallel bands on the pool, then run 'then'
+    void colorizeAsync(int id, IterFrame f, ColorTable colors, int phase, Runnable then){
+        final int w = f.width, h = f.height;
+        final int bandHeight = Math.max(8, h / (threads * 4));
+        final AtomicInteger remaining = new AtomicInteger((h + bandHeight - 1) / bandHeight);
+        for(int by = 0; by < h; by += bandHeight){
+            final int y0 = by, y1 = Math.min(h, by + bandHeight);
+            pool.submit(id, () -> {
+                f.colorize(0, w, y0, y1, colors, phase);
+                if(remaining.decrementAndGet() == 0) then.run();
+            });
+        }
+    }
 
-        // temporary image exclusive to this render
-        final BufferedImage renderImage = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
-        final AtomicInteger remaining = new AtomicInteger(tileCount);
+    // show a finished frame; recolor it if the palette or phase moved on while it was rendering
+    void publish(int id, IterFrame f, ColorTable colors, int phase, boolean full){
+        if(full) telemetry.completed(id);
+        show(f, full);
+        shown(id);
+        SwingUtilities.invokeLater(this::repaint);
+        if(colors != colorTable() || phase != colorPhase) recolor();
+    }
 
-        for(int ty = 0; ty < H; ty += tileHeight){
-            final int y0 = ty, y1 = Math.min(H, ty + tileHeight);
-            pool.submit(() -> {
-                // If this render was cancelled, exit early
-                if(renderId.get() != id) return;
-                renderTile(renderImage, y0, y1, cX, cY, sc, iters, julia, jc, ji, subsample);
-
-                // decrement y if all tiles are done, publish the full image
-                if(remaining.decrementAndGet() == 0){
-                    // Only replace the visible image if the id is still the same (no other interaction has occurred)
-                    if(renderId.get() == id){
-                        image = renderImage; // volatile write
-                        SwingUtilities.invokeLater(this::repaint);
-                    }
+    // put f on screen (and make it the pan base if full); the fields hold a reference each
+    void show(IterFrame f, boolean full){
+        synchronized(frameLock){
+            f.retain();
+            IterFrame old = frame;
+            frame = f; // volatile write
+            old.release();
+            if(full){
+                f.retain();
+                old = lastFull;
+                lastFull = f;
+                if(old != null) old.release();
+            }
+        }
+    }
+
+    // the frame on screen, retained so it cannot be recycled while the caller reads it
+    IterFrame retainShown(){
+        synchronized(frameLock){
+            frame.retain();
+            return frame;
+        }
+    }
+
+    // the pan base, retained, or null before the first full frame
+    IterFrame retainLastFull(){
+        synchronized(frameLock){
+            if(lastFull != null) lastFull.retain();
+            return lastFull;
+        }
+    }
+
+    // a frame from the pool for render id, released back once every task of the render is done;
+    // must be called before the render submits its first task
+    IterFrame acquireFrame(int id, View view){
+        final IterFrame f = frames.acquire(view);
+        pool.whenDrained(id, f::release);
+        return f;
+    }
+
+    // queue a region of the displayed image for the next coalesced repaint
+    void markDirty(int x, int y, int w, int h){
+        synchronized(repaintTimer){
+            if(dirty == null) dirty = new Rectangle(x, y, w, h);
+            else dirty.add(new Rectangle(x, y, w, h));
+        }
+    }
+
+    private void flushDirty(){
+        Rectangle r;
+        synchronized(repaintTimer){
+            r = dirty;
+            dirty = null;
+        }
+        if(r == null) return;
+        // tiles are in render pixels, repaint wants user space
+        final IterFrame f = frame;
+        final double kx = (double)canvasWidth() / f.width, ky = (double)canvasHeight() / f.height;
+        final int x0 = (int)Math.floor(r.x * kx), y0 = (int)Math.floor(r.y * ky);
+        repaint(x0, y0, (int)Math.ceil((r.x + r.width) * kx) - x0, (int)Math.ceil((r.y + r.height) * ky) - y0);
+    }
+
+    // block sizes of the progressive stages, coarsest first; each one halves the previous
+    static final int[] STAGES = {8, 4, 2, 1};
+
+    // the overlay's figures for a full-resolution render about to be published: 'escaped' pixels
+    // computed since the interaction at t0, 'skipped' of the frame's pixels answered by the
+    // interior test, 'filled' by subdivision and 'reused' copied from the previous frame;
+    // firstPixelAt is when the first full-resolution pixel was shown
+    void recordStats(View view, long t0, long firstPixelAt, long escaped, long skipped, long filled, long reused){
+        final double pixels = (double)view.width * view.height;
+        lastMpixPerSec = escaped / ((System.nanoTime() - t0) / 1e3);
+        lastFirstPixelMs = (firstPixelAt - t0) / 1e6;
+        lastInteriorSkipped = skipped / pixels;
+        lastFilled = filled / pixels;
+        lastReused = reused / pixels;
+        lastEngine = view.engine(kernel);
+        lastReferences = view.references();
+    }
+
+    /*
+    * Render one progressive stage and publish it. Stage 0 escapes one sample per 8x8 block
+    * into a new frame; every later stage refines that same frame, escaping only the samples
+    * of its grid that are not on the previous (twice as coarse) one, which is 3/4 of them.
+    * The tiles of a refining stage are ordered by the counts the frame already holds, and
+    * since that frame is already on screen they show up tile by tile. The subdivision engine
+    * renders its final stage into a frame of its own.
+    */
+    void submitStage(int id, View view, int stage, IterFrame prev, long t0, long skippedBefore){
+        final int subsample = STAGES[stage];
+        final boolean last = stage == STAGES.length - 1;
+        final long pixels = (long)view.width * view.height;
+        final ColorTable colors = colorTable();
+        final int phase = colorPhase;
+
+        if(last && subdivide){
+            final IterFrame renderFrame = acquireFrame(id, view);
+            final Subdivider sd = new Subdivider(kernel, renderFrame, r -> pool.submit(id, r), () -> renderId.get() != id);
+            sd.telemetry = telemetry;
+            sd.id = id;
+            sd.onDone = () -> colorizeAsync(id, renderFrame, colors, phase, () -> {
+                if(renderId.get() == id){
+                    recordStats(view, t0, System.nanoTime(), pixels, sd.skipped.get(), sd.filled.get(), 0);
+                    publish(id, renderFrame, colors, phase, true);
                 }
             });
+            sd.start();
+            return;
         }
+
+        final IterFrame renderFrame = prev != null ? prev : acquireFrame(id, view);
+        final TileJob job = new TileJob(id, renderFrame, subsample, prev != null, colors, phase);
+        job.repaintTiles = prev != null;
+        job.onDone = () -> {
+            final long skipped = skippedBefore + job.skipped.get();
+            if(last){
+                recordStats(view, t0, job.firstPixelAt, pixels, skipped, 0, 0);
+            } else {
+                lastEngine = view.engine(kernel);
+                lastReferences = view.references();
+            }
+            publish(id, renderFrame, colors, phase, last);
+            if(!last) submitStage(id, view, stage + 1, renderFrame, t0, skipped);
+        };
+        job.start(prev);
     }
 
-    // Core renderer for rows [y0, y1)
-    void renderTile(BufferedImage img, int y0, int y1, double cX, double cY, double sc, int maxIter,
-                    boolean julia, double jc, double ji, int subsample){
-        final double aspect = (double)H / W;
-        final double reFactor = sc / W;
-        final double imFactor = sc * aspect / H;
+    /*
+    * One pass over a frame, cut into square tiles that run on the fork/join pool. With a cost
+    * hint (a frame that already holds rough counts for the same view) the tiles are submitted
+    * most expensive first. A running tile splits into quadrants while the pool is short of
+    * queued work, so a slow region near the set's boundary is shared among idle workers
+    * instead of finishing last on its own.
+    */
+    final class TileJob {
+        static final int TILE = 128, MIN_TILE = 16;
 
-        for(int py = y0; py < y1; py += subsample){
-            int yy = py;
-            for(int px = 0; px < W; px += subsample){
-                // compute for upper-left pixel per block
-                double x0 = cX + ((px - W/2.0) * reFactor);
-                double y0c = cY + ((py - H/2.0) * imFactor);
+        final int id;
+        final IterFrame frame;
+        final int subsample;
+        final boolean refine; // the frame already holds the samples of the 2*subsample grid
+        final ColorTable colors;
+        final int phase;
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicLong skipped = new AtomicLong();
+        boolean repaintTiles; // the frame is on screen: repaint each tile as it lands
+        volatile long firstPixelAt; // System.nanoTime() when the first full-resolution tile was shown
+        final AtomicBoolean firstTile = new AtomicBoolean();
+        Runnable onDone = () -> {};
 
-                double zx = x0, zy = y0c;
-                double cx = julia ? jc : x0;
-                double cy = julia ? ji : y0c;
+        TileJob(int id, IterFrame frame, int subsample, boolean refine, ColorTable colors, int phase){
+            this.id = id; this.frame = frame; this.subsample = subsample; this.refine = refine;
+            this.colors = colors; this.phase = phase;
+        }
 
-                int iter = 0;
-                double zx2 = zx*zx, zy2 = zy*zy;
-                // iterate
-                while(iter < maxIter && zx2 + zy2 <= 4.0){
-                    zy = 2*zx*zy + cy;
-                    zx = zx2 - zy2 + cx;
-                    zx2 = zx*zx; zy2 = zy*zy;
-                    iter++;
+        void start(IterFrame costHint){
+            List<TileTask> tiles = new ArrayList<>();
+            final int w = frame.width, h = frame.height;
+            for(int y = 0; y < h; y += TILE){
+                for(int x = 0; x < w; x += TILE){
+                    tiles.add(new TileTask(x, y, Math.min(w, x + TILE), Math.min(h, y + TILE)));
+                }
+            }
+            if(costHint != null){
+                for(TileTask t : tiles) t.cost = estimateCost(costHint, t.x0, t.y0, t.x1, t.y1);
+                tiles.sort(Comparator.comparingDouble((TileTask t) -> t.cost).reversed());
+            }
+            pending.set(tiles.size());
+            for(TileTask t : tiles) pool.submit(t);
+        }
+
+        // sum of the counts sampled every 4th pixel; pixels inside the set cost maxIter
+        private double estimateCost(IterFrame hint, int x0, int y0, int x1, int y1){
+            final float[] nu = hint.nu;
+            final int maxIter = hint.view.maxIter, stride = hint.width;
+            double cost = 0;
+            for(int y = y0; y < y1; y += 4){
+                for(int x = x0; x < x1; x += 4){
+                    float v = nu[y * stride + x];
+                    cost += v == IterFrame.INSIDE ? maxIter : Math.max(1, v);
                 }
+            }
+            return cost;
+        }
 
-                int rgb;
-                if(iter >= maxIter){
-                    rgb = 0x000000; // inside -> black
-                } else {
-                    // smooth iteration count for continuous coloring
-                    double log_zn = Math.log(zx2 + zy2) / 2.0;
-                    double nu = iter + 1 - Math.log(log_zn) / Math.log(2);
-                    // color mapping: convert continuous index to HSB
-                    float hue = (float)(0.95f + 10 * nu / maxIter) % 1f;
-                    float sat = 0.8f;
-                    float bright = 0.7f;
-                    rgb = Color.HSBtoRGB(hue, sat, bright);
+        @SuppressWarnings("serial")
+        final class TileTask extends RenderScheduler.RenderTask {
+            int x0, y0, x1, y1;
+            double cost;
+
+            TileTask(int x0, int y0, int x1, int y1){
+                super(TileJob.this.id);
+                this.x0 = x0; this.y0 = y0; this.x1 = x1; this.y1 = y1;
+            }
+
+            @Override
+            void run(){
+                if(renderId.get() != id){
+                    telemetry.cancelledTiles.increment();
+                    return;
+                }
+                // split only once nothing is queued anywhere in the pool, so other workers would run
+                // dry; keep the top-left quadrant. MIN_TILE counts samples, so coarse stages split less
+                final int minTile = MIN_TILE * subsample;
+                while(x1 - x0 >= 2 * minTile && y1 - y0 >= 2 * minTile
+                        && getSurplusQueuedTaskCount() < 1 && pool.depth() == 0){
+                    int xm = ((x0 + x1) >> 1) & -minTile, ym = ((y0 + y1) >> 1) & -minTile;
+                    pending.addAndGet(3);
+                    pool.submit(new TileTask(xm, y0, x1, ym));
+                    pool.submit(new TileTask(x0, ym, xm, y1));
+                    pool.submit(new TileTask(xm, ym, x1, y1));
+                    x1 = xm; y1 = ym;
+                }
+                skipped.addAndGet(renderTile(id, frame, x0, x1, y0, y1, subsample, refine));
+                if(renderId.get() != id){
+                    // superseded while escaping: the tile is incomplete, and the frame may be on screen
+                    pending.decrementAndGet();
+                    return;
                 }
+                frame.colorize(x0, x1, y0, y1, colors, phase);
+                if(repaintTiles){
+                    markDirty(x0, y0, x1 - x0, y1 - y0);
+                    if(subsample == 1 && firstTile.compareAndSet(false, true)){
+                        firstPixelAt = System.nanoTime();
+                    }
+                }
+                if(pending.decrementAndGet() == 0 && renderId.get() == id) onDone.run();
+            }
+        }
+    }
+
+    /*
+    * Pan path: when 'view' is 'prev' shifted by a whole number of pixels, the overlapping part
+    * of prev's smooth iteration counts is copied over and only the newly exposed strips are
+    * escaped, so the cost follows the exposed area; deep, the old reference orbit is reused
+    * while it lies inside the frame (View.panFrom). Returns false if it is not such a pan;
+    * when it returns true it has taken over the caller's reference to prev.
+    */
+    boolean submitPan(int id, View view, IterFrame prev){
+        final View old = prev.view;
+        if(!old.scale.equals(view.scale) || old.maxIter != view.maxIter || old.julia != view.julia
+                || (view.julia && (old.jc != view.jc || old.ji != view.ji))
+                || old.width != view.width || old.height != view.height){
+            return false;
+        }
+        final int w = view.width, h = view.height;
+        // offset of the new view in pixels; the exact centers keep this meaningful when deep
+        final double ox = FloatExp.of(view.hpCenterX.subtract(old.hpCenterX)).div(view.pixel).toDouble();
+        final double oy = FloatExp.of(view.hpCenterY.subtract(old.hpCenterY)).div(view.pixel).toDouble();
+        final long dx = Math.round(ox), dy = Math.round(oy);
+        if(Math.abs(ox - dx) > 1e-3 || Math.abs(oy - dy) > 1e-3 || Math.abs(dx) >= w || Math.abs(dy) >= h){
+            return false;
+        }
+        final int sx = (int)dx, sy = (int)dy; // new pixel (x, y) is old pixel (x + sx, y + sy)
+        view.panFrom(old, sx, sy);
+        telemetry.kind(id, "pan");
+        pool.whenDrained(id, prev::release); // the copy task reads prev
+        final IterFrame renderFrame = acquireFrame(id, view);
+        final ColorTable colors = colorTable();
+        final int phase = colorPhase;
+        final long t0 = System.nanoTime();
+
+        // exposed rows span the whole width, exposed columns the rows in between
+        final int rowsY0 = sy > 0 ? h - sy : 0, rowsY1 = sy > 0 ? h : -sy;
+        final int colsX0 = sx > 0 ? w - sx : 0, colsX1 = sx > 0 ? w : -sx;
+        final int keptY0 = Math.max(0, -sy), keptY1 = Math.min(h, h - sy);
+        final int tileHeight = Math.max(8, h / (threads * 4));
+        final List<int[]> strips = new ArrayList<>(); // x0, x1, y0, y1
+        for(int y = rowsY0; y < rowsY1; y += tileHeight) strips.add(new int[]{0, w, y, Math.min(rowsY1, y + tileHeight)});
+        if(colsX1 > colsX0){
+            for(int y = keptY0; y < keptY1; y += tileHeight) strips.add(new int[]{colsX0, colsX1, y, Math.min(keptY1, y + tileHeight)});
+        }
+        final long exposed = (long)(rowsY1 - rowsY0) * w + (long)(colsX1 - colsX0) * (keptY1 - keptY0);
+
+        final AtomicInteger remaining = new AtomicInteger(strips.size() + 1);
+        final AtomicLong skipped = new AtomicLong();
+        final Runnable done = () -> {
+            if(remaining.decrementAndGet() == 0 && renderId.get() == id){
+                colorizeAsync(id, renderFrame, colors, phase, () -> {
+                    if(renderId.get() != id) return;
+                    recordStats(view, t0, System.nanoTime(), exposed, skipped.get(), 0, (long)w * h - exposed);
+                    publish(id, renderFrame, colors, phase, true);
+                });
+            }
+        };
+        pool.submit(id, () -> {
+            if(renderId.get() != id) return;
+            final int xs = Math.max(0, sx), xd = Math.max(0, -sx), n = w - Math.abs(sx);
+            for(int y = keptY0; y < keptY1; y++){
+                System.arraycopy(prev.nu, (y + sy) * w + xs, renderFrame.nu, y * w + xd, n);
+            }
+            done.run();
+        });
+        for(final int[] r : strips){
+            pool.submit(id, () -> {
+                if(renderId.get() != id) return;
+                skipped.addAndGet(renderTile(id, renderFrame, r[0], r[1], r[2], r[3], 1));
+                done.run();
+            });
+        }
+        return true;
+    }
+
+    /*
+    * Zoom path: the frame on screen is resampled (nearest neighbour on its smooth iteration
+    * counts) through the zoom transform into the new frame, which is shown at once. The real
+    * tiles are then escaped straight into that frame and show up as they land.
+    * Pixels the old frame does not cover (zooming out) start black. Returns false when the
+    * view differs by more than scale and center.
+    */
+    boolean submitZoom(int id, View view, IterFrame prev){
+        final View old = prev.view;
+        if(old.scale.equals(view.scale) || old.maxIter != view.maxIter || old.julia != view.julia
+                || (view.julia && (old.jc != view.jc || old.ji != view.ji))
+                || old.width != view.width || old.height != view.height){
+            return false;
+        }
+        final int w = view.width, h = view.height;
+        telemetry.kind(id, "zoom");
+        final IterFrame renderFrame = acquireFrame(id, view);
+        final ColorTable colors = colorTable();
+        final int phase = colorPhase;
+        final long t0 = System.nanoTime();
+
+        // new pixel (x, y) sits at old pixel (w/2 + (x - w/2)*ratio + shiftX, h/2 + ...)
+        final double ratio = view.scale.div(old.scale).toDouble();
+        final double shiftX = FloatExp.of(view.hpCenterX.subtract(old.hpCenterX)).div(old.pixel).toDouble();
+        final double shiftY = FloatExp.of(view.hpCenterY.subtract(old.hpCenterY)).div(old.pixel).toDouble();
+        final int[] srcX = new int[w];
+        for(int x = 0; x < w; x++){
+            double ox = Math.floor(w/2.0 + (x - w/2.0) * ratio + shiftX);
+            srcX[x] = ox >= 0 && ox < w ? (int)ox : -1;
+        }
+        for(int y = 0; y < h; y++){
+            double oy = Math.floor(h/2.0 + (y - h/2.0) * ratio + shiftY);
+            int row = y * w;
+            if(oy < 0 || oy >= h){
+                java.util.Arrays.fill(renderFrame.nu, row, row + w, IterFrame.INSIDE);
+                continue;
+            }
+            int src = (int)oy * w;
+            for(int x = 0; x < w; x++){
+                renderFrame.nu[row + x] = srcX[x] >= 0 ? prev.nu[src + srcX[x]] : IterFrame.INSIDE;
+            }
+        }
+        renderFrame.colorize(0, w, 0, h, colors, phase);
+        show(renderFrame, false);
+        shown(id);
+        repaint();
+
+        if(subdivide){
+            // the subdivision engine publishes whole frames; the preview stays up until then
+            submitStage(id, view, STAGES.length - 1, null, t0, 0);
+            return true;
+        }
+        // the resampled counts double as the cost estimate for ordering the tiles
+        final TileJob job = new TileJob(id, renderFrame, 1, false, colors, phase);
+        job.repaintTiles = true;
+        job.onDone = () -> {
+            recordStats(view, t0, job.firstPixelAt, (long)w * h, job.skipped.get(), 0, 0);
+            publish(id, renderFrame, colors, phase, true);
+        };
+        job.start(renderFrame);
+        return true;
+    }
+
+    long renderTile(int id, IterFrame f, int x0, int x1, int y0, int y1, int subsample){
+        return renderTile(id, f, x0, x1, y0, y1, subsample, false);
+    }
+
+    // Core renderer for the rectangle [x0, x1) x [y0, y1): fills the frame's smooth iteration
+    // counts and returns how many pixels the interior test skipped. Stops between rows once
+    // render 'id' has been superseded, without writing the row it was on. With refine, the samples on the grid twice as coarse
+    // are already in the frame and only the others are escaped; x0 and y0 must then be
+    // multiples of 2*subsample. Every call is reported to the telemetry as one tile.
+    long renderTile(int id, IterFrame f, int x0, int x1, int y0, int y1, int subsample, boolean refine){
+        final TileEvent event = new TileEvent();
+        event.begin();
+        final long t0 = System.nanoTime();
+        final SpanCounts counts = new SpanCounts();
+        boolean cancelled = false;
+        final View view = f.view;
+        final int maxIter = view.maxIter;
+        // upper-left pixel of each block
+        final int cols = (x1 - x0 + subsample - 1) / subsample;
+        final int[] iters = new int[cols];
+        final double[] mag2 = new double[cols];
+        final float[] nu = f.nu;
+        final int w = f.width, h = f.height;
+
+        for(int py = y0; py < y1; py += subsample){
+            if(renderId.get() != id){
+                cancelled = true;
+                break;
+            }
+            int yy = py;
+            // on rows of the coarser grid only the odd columns are new
+            boolean oddOnly = refine && (py - y0) % (2 * subsample) == 0;
+            int sx0 = oddOnly ? x0 + subsample : x0;
+            int step = oddOnly ? 2 * subsample : subsample;
+            int n = oddOnly ? cols / 2 : cols;
+            escapeSpan(kernel, view, py, sx0, step, n, iters, mag2, counts);
+            if(renderId.get() != id){
+                // the deep engine gives up midway when cancelled: this row's counts are not real
+                cancelled = true;
+                break;
+            }
+
+            for(int i = 0; i < n; i++){
+                int px = sx0 + i * step;
+                int iter = iters[i];
+
+                float v = iter >= maxIter ? IterFrame.INSIDE : (float)smoothIter(iter, mag2[i]);
 
                 // write block of size subsample x subsample
+                int bw = Math.min(subsample, x1 - px);
                 for(int dy = 0; dy < subsample; dy++){
                     int sy = yy + dy;
-                    if(sy >= H) break;
-                    for(int dx = 0; dx < subsample; dx++){
-                        int sx = px + dx;
-                        if(sx >= W) break;
-                        img.setRGB(sx, sy, rgb);
-                    }
+                    if(sy >= h) break;
+                    int row = sy * w + px;
+                    for(int dx = 0; dx < bw; dx++) nu[row + dx] = v;
                 }
             }
         }
+        telemetry.tile(event, id, x0, y0, x1 - x0, y1 - y0, subsample, System.nanoTime() - t0, counts, cancelled);
+        return counts.skipped * subsample * subsample;
     }
 
-    @Override
-    protected void paintComponent(Graphics g){
-        super.paintComponent(g);
-        g.drawImage(image, 0, 0, null);
-        Graphics2D g2 = (Graphics2D) g.create();
-        g2.setColor(new Color(255,255,255,200));
-        g2.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+    // the int[] behind a TYPE_INT_RGB image, written directly instead of through setRGB
+    static int[] pixels(BufferedImage img){
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
 
-    String mode = useJulia ? "Julia" : "Mandelbrot";
-    String coords = useJulia
-        ? String.format("c=%.6f%+.6fi", juliaCr, juliaCi)
-        : String.format("cx=%.6f cy=%.6f", centerX, centerY);
-    String info = String.format("%s  %s  scale=%.6g  iter=%d", mode, coords, scale, maxIter);
-        g2.drawString(info, 8, 18);
-        g2.drawString("Mouse-wheel: zoom  |  Arrows: pan  |  +/- iter  |  M/J: mode  |  Click to set Julia c  |  Space: reset", 8, H-8);
-        g2.dispose();
+    /*
+    * One frame. Escaping fills nu with the smooth iteration count of every pixel (INSIDE for
+    * points that never escaped) and colorize turns nu into the image, so a palette change or
+    * color cycling reruns only colorize, a pass over memory, never the escape loop.
+    */
+    static final class IterFrame {
+        static final float INSIDE = Float.POSITIVE_INFINITY;
+
+        View view; // null for the blank frame shown before the first render; reset on reuse
+        int width, height; // the view's size; rows of nu and pixels are 'width' apart
+        final float[] nu; // capacity may exceed width * height, so a frame can be reused at other sizes
+        final int[] pixels;
+        private final DataBufferInt buffer;
+        BufferedImage image; // TYPE_INT_RGB, width x height, over pixels
+        private final FramePool owner; // null: not pooled
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        IterFrame(View view){
+            this(view, null, view == null ? W * H : view.width * view.height);
+        }
+
+        IterFrame(View view, FramePool owner, int capacity){
+            this.owner = owner;
+            nu = new float[capacity];
+            pixels = new int[capacity];
+            buffer = new DataBufferInt(pixels, capacity);
+            reset(view);
+            if(view == null) java.util.Arrays.fill(nu, INSIDE);
+        }
+
+        boolean fits(View v){
+            return (long)v.width * v.height <= nu.length;
+        }
+
+        // take the frame over for view v, rewrapping the image if the size changed
+        void reset(View v){
+            view = v;
+            final int w = v == null ? W : v.width, h = v == null ? H : v.height;
+            if(image != null && w == width && h == height) return;
+            width = w;
+            height = h;
+            Raster raster = Raster.createPackedRaster(buffer, w, h, w, new int[]{0xFF0000, 0xFF00, 0xFF}, null);
+            image = new BufferedImage(new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF),
+                    (java.awt.image.WritableRaster) raster, false, null);
+        }
+
+        void retain(){
+            refs.incrementAndGet();
+        }
+
+        // drop a reference; the last one hands the frame back to its pool
+        void release(){
+            if(refs.decrementAndGet() == 0 && owner != null) owner.recycle(this);
+        }
+
+        // colors for the rectangle [x0, x1) x [y0, y1)
+        void colorize(int x0, int x1, int y0, int y1, ColorTable colors, int phase){
+            for(int y = y0; y < y1; y++){
+                for(int i = y * width + x0, end = y * width + x1; i < end; i++){
+                    float v = nu[i];
+                    pixels[i] = v == INSIDE ? 0x000000 : colors.color(v, phase);
+                }
+            }
+        }
     }
 
-    // Entry point
-    public static void main(String[] args){
+    // latencies in 1 ms buckets (the last one collects everything slower), for percentiles
+    static final class LatencyHistogram {
+        private final long[] buckets = new long[1001];
+        private long count;
+        private double sum, max;
+
+        synchronized void add(double ms){
+            buckets[(int)Math.min(buckets.length - 1, Math.max(0, ms))]++;
+            count++;
+            sum += ms;
+            max = Math.max(max, ms);
+        }
+
+        synchronized void reset(){
+            java.util.Arrays.fill(buckets, 0);
+            count = 0;
+            sum = max = 0;
+        }
+
+        synchronized long count(){ return count; }
+        synchronized double mean(){ return count == 0 ? 0 : sum / count; }
+        synchronized double max(){ return max; }
+
+        // upper edge of the bucket holding the p-th fraction of the samples
+        synchronized double percentile(double p){
+            long rank = (long)Math.ceil(p * count), seen = 0;
+            for(int i = 0; i < buckets.length; i++){
+                seen += buckets[i];
+                if(seen >= rank && seen > 0) return i + 1;
+            }
+            return 0;
+        }
+    }
+
+    /*
+    * Render telemetry. renderTile reports every tile (wall time, iterations, pixels escaped and
+    * skipped, whether it was cut short) and the scheduler every task (time spent queued); each
+    * render is traced from its trigger until the scheduler has drained it. The running totals
+    * feed the overlay and --soak, and every tile, task and render is also emitted as a JDK
+    * Flight Recorder event (fractal.Tile, fractal.Task, fractal.Render), which costs next to
+    * nothing unless a recording is running:
+    *   java -XX:StartFlightRecording=filename=fractal.jfr FractalVisualizer
+    *   jfr print --events fractal.Tile fractal.jfr
+    */
+    static final class Telemetry {
+        final LongAdder tiles = new LongAdder(), tileNanos = new LongAdder(), cancelledTiles = new LongAdder();
+        final LongAdder pixels = new LongAdder(), iterations = new LongAdder(), skipped = new LongAdder();
+        final LongAdder tasks = new LongAdder(), queueNanos = new LongAdder();
+        final LongAdder renders = new LongAdder(), cancelledRenders = new LongAdder();
+        private final Map<Integer, RenderTrace> live = new ConcurrentHashMap<>();
+
+        private static final class RenderTrace {
+            final RenderEvent event = new RenderEvent();
+            final View view;
+            final AtomicLong tiles = new AtomicLong(), iterations = new AtomicLong(), skipped = new AtomicLong();
+            volatile String kind = "progressive";
+            volatile boolean completed;
+
+            RenderTrace(View view){
+                this.view = view;
+            }
+        }
+
+        // render id of view starts; it ends (end) once the scheduler has drained it
+        void begin(int id, View view, Kernel kernel){
+            final RenderTrace t = new RenderTrace(view);
+            t.event.begin();
+            t.event.render = id;
+            t.event.width = view.width;
+            t.event.height = view.height;
+            t.event.maxIter = view.maxIter;
+            t.event.engine = view.engine(kernel);
+            live.put(id, t);
+        }
+
+        // the path render id took: progressive, pan or zoom
+        void kind(int id, String kind){
+            final RenderTrace t = live.get(id);
+            if(t != null) t.kind = kind;
+        }
+
+        // render id published its full-resolution frame
+        void completed(int id){
+            final RenderTrace t = live.get(id);
+            if(t != null) t.completed = true;
+        }
+
+        void end(int id){
+            final RenderTrace t = live.remove(id);
+            if(t == null) return;
+            renders.increment();
+            if(!t.completed) cancelledRenders.increment();
+            t.event.end();
+            if(t.event.shouldCommit()){
+                t.event.kind = t.kind;
+                t.event.completed = t.completed;
+                t.event.tiles = t.tiles.get();
+                t.event.iterations = t.iterations.get();
+                t.event.skipped = t.skipped.get();
+                t.event.references = t.view.references();
+                t.event.commit();
+            }
+        }
+
+        // one renderTile call; event was begun when the tile started
+        void tile(TileEvent event, int id, int x, int y, int w, int h, int subsample, long nanos,
+                  SpanCounts counts, boolean cancelled){
+            tiles.increment();
+            tileNanos.add(nanos);
+            pixels.add(counts.pixels);
+            iterations.add(counts.iterations);
+            skipped.add(counts.skipped);
+            if(cancelled) cancelledTiles.increment();
+            final RenderTrace t = live.get(id);
+            if(t != null){
+                t.tiles.incrementAndGet();
+                t.iterations.addAndGet(counts.iterations);
+                t.skipped.addAndGet(counts.skipped);
+            }
+            event.end();
+            if(event.shouldCommit()){
+                event.render = id;
+                event.x = x; event.y = y; event.width = w; event.height = h;
+                event.subsample = subsample;
+                event.pixels = counts.pixels;
+                event.iterations = counts.iterations;
+                event.skipped = counts.skipped;
+                event.cancelled = cancelled;
+                event.commit();
+            }
+        }
+
+        // one scheduler task, after it ran; wait is the time it spent queued
+        void task(TaskEvent event, int id, long wait){
+            tasks.increment();
+            queueNanos.add(wait);
+            event.end();
+            if(event.shouldCommit()){
+                event.render = id == RenderScheduler.UNTAGGED ? -1 : id;
+                event.queueWait = wait;
+                event.commit();
+            }
+        }
+
+        void reset(){
+            for(LongAdder a : new LongAdder[]{tiles, tileNanos, cancelledTiles, pixels, iterations, skipped,
+                    tasks, queueNanos, renders, cancelledRenders}){
+                a.reset();
+            }
+        }
+
+        String summary(){
+            final long n = Math.max(1, tiles.sum()), px = Math.max(1, pixels.sum());
+            return String.format("tiles %d (%d cancelled, %.2f ms each)  queue wait %.2f ms  %.1f iter/px  skipped %.1f%%  renders %d (%d cancelled)",
+                    tiles.sum(), cancelledTiles.sum(), tileNanos.sum() / 1e6 / n, queueNanos.sum() / 1e6 / Math.max(1, tasks.sum()),
+                    (double)iterations.sum() / px, 100.0 * skipped.sum() / px, renders.sum(), cancelledRenders.sum());
+        }
+    }
+
+    // Flight Recorder events; fields are filled only when a recording wants the event
+    @Name("fractal.Tile")
+    @Label("Tile")
+    @Category("Fractal")
+    @Description("One rectangle escaped by renderTile; the duration is its wall time")
+    static final class TileEvent extends jdk.jfr.Event {
+        @Label("Render") int render;
+        @Label("X") int x;
+        @Label("Y") int y;
+        @Label("Width") int width;
+        @Label("Height") int height;
+        @Label("Block Size") int subsample;
+        @Label("Pixels") @Description("Samples escaped or answered by the interior test") long pixels;
+        @Label("Iterations") long iterations;
+        @Label("Skipped") @Description("Samples the interior test answered without iterating") long skipped;
+        @Label("Cancelled") @Description("The render was superseded before the tile finished") boolean cancelled;
+    }
+
+    @Name("fractal.Task")
+    @Label("Render Task")
+    @Category("Fractal")
+    @Description("One task run by the render scheduler; the duration is its run time")
+    static final class TaskEvent extends jdk.jfr.Event {
+        @Label("Render") @Description("-1 for untagged tasks such as recolor passes") int render;
+        @Label("Queue Wait") @Timespan(Timespan.NANOSECONDS) long queueWait;
+    }
+
+    @Name("fractal.Render")
+    @Label("Render")
+    @Category("Fractal")
+    @Description("From the trigger until the last task of the render has run or been purged")
+    static final class RenderEvent extends jdk.jfr.Event {
+        @Label("Render") int render;
+        @Label("Kind") String kind;
+        @Label("Width") int width;
+        @Label("Height") int height;
+        @Label("Max Iterations") int maxIter;
+        @Label("Engine") String engine;
+        @Label("Tiles") long tiles;
+        @Label("Iterations") long iterations;
+        @Label("Skipped") long skipped;
+        @Label("References") @Description("Reference orbits of a perturbation render, 0 for the others") int references;
+        @Label("Completed") @Description("The full-resolution frame was published") boolean completed;
+    }
+
+    /*
+    * Recycles frames (two buffers of 8 bytes per pixel in all, about 4 MB at 900x600) instead
+    * of allocating one per render, which under a drag means one per mouse event. A frame is
+    * reference counted: the render filling it holds it until every task of that render has
+    * finished or been purged, and the screen, the pan base and recolor passes hold it while
+    * they use it. When the last reference goes the frame returns here; at most 'capacity' idle
+    * frames are kept, the rest go to the GC. Buffers are sized up to whole 128-pixel steps, so
+    * while a window is being resized frames keep fitting instead of being replaced each event,
+    * and a frame too small for the current size is dropped when it comes up.
+    */
+    static final class FramePool {
+        final int capacity;
+        private final ArrayDeque<IterFrame> idle = new ArrayDeque<>();
+        final AtomicLong allocated = new AtomicLong(), reused = new AtomicLong();
+
+        FramePool(int capacity){
+            this.capacity = capacity;
+        }
+
+        // a frame for view holding one reference; its buffers still contain an older render
+        IterFrame acquire(View view){
+            IterFrame f;
+            do {
+                synchronized(idle){
+                    f = idle.poll();
+                }
+            } while(f != null && !f.fits(view));
+            if(f == null){
+                allocated.incrementAndGet();
+                return new IterFrame(view, this, roundUp(view.width) * roundUp(view.height));
+            }
+            reused.incrementAndGet();
+            f.reset(view);
+            f.refs.set(1);
+            return f;
+        }
+
+        private static int roundUp(int n){
+            return (n + 127) & -128;
+        }
+
+        void recycle(IterFrame f){
+            synchronized(idle){
+                if(idle.size() < capacity) idle.push(f);
+            }
+        }
+    }
+
+    /*
+    * Work-stealing pool for render tasks. Every task carries the id of the render it belongs
+    * to, so when a newer render starts the queued tasks of older ones are drained from all
+    * queues in one sweep (purgeBefore) instead of being dequeued one by one just to find out
+    * they are stale. The scheduler also counts the queued and running tasks of each render, so
+    * resources can be handed back once a render is over (whenDrained). Queue depth and purge
+    * counts are kept for the overlay.
+    */
+    static final class RenderScheduler {
+        static final int UNTAGGED = Integer.MAX_VALUE; // never purged nor counted (recolor passes)
+
+        // a task of render 'id'; counted out when it has run or been purged. ForkJoinTask is
+        // Serializable, but tasks never leave the pool
+        @SuppressWarnings("serial")
+        abstract static class RenderTask extends RecursiveAction {
+            final int id;
+            private RenderScheduler scheduler;
+            private long submittedAt; // System.nanoTime(), for the queue wait
+
+            RenderTask(int id){
+                this.id = id;
+            }
+
+            abstract void run();
+
+            @Override
+            protected final void compute(){
+                final TaskEvent event = new TaskEvent();
+                event.begin();
+                final long wait = System.nanoTime() - submittedAt;
+                try {
+                    run();
+                } finally {
+                    scheduler.telemetry.task(event, id, wait);
+                    scheduler.finished(id);
+                }
+            }
+        }
+
+        private static final class Render {
+            int tasks; // queued or running
+            final List<Runnable> whenDrained = new ArrayList<>();
+        }
+
+        // drainTasksTo is protected; this exposes it to the scheduler
+        private static final class Pool extends ForkJoinPool {
+            Pool(int threads){
+                super(threads, defaultForkJoinWorkerThreadFactory, null, true); // FIFO: tasks are never joined
+            }
+            int drainTo(Collection<ForkJoinTask<?>> c){
+                return drainTasksTo(c);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class Task extends RenderTask {
+            final Runnable body;
+            Task(int id, Runnable body){ super(id); this.body = body; }
+            @Override void run(){ body.run(); }
+        }
+
+        private final Pool pool;
+        final Telemetry telemetry;
+        private final Map<Integer, Render> renders = new HashMap<>(); // guarded by itself
+        final AtomicInteger peakDepth = new AtomicInteger();
+        final AtomicLong purged = new AtomicLong();
+        volatile int lastPurged;
+
+        RenderScheduler(int threads, Telemetry telemetry){
+            pool = new Pool(threads);
+            this.telemetry = telemetry;
+        }
+
+        void submit(int id, Runnable r){
+            submit(new Task(id, r));
+        }
+
+        // from a worker thread the task goes on that worker's own deque, where idle workers steal it
+        void submit(RenderTask task){
+            task.scheduler = this;
+            task.submittedAt = System.nanoTime();
+            if(task.id != UNTAGGED){
+                synchronized(renders){
+                    renders.computeIfAbsent(task.id, k -> new Render()).tasks++;
+                }
+            }
+            pool.execute(task);
+            peakDepth.accumulateAndGet(depth(), Math::max);
+        }
+
+        // run r once render id has no task left; register before its first task is submitted
+        void whenDrained(int id, Runnable r){
+            synchronized(renders){
+                renders.computeIfAbsent(id, k -> new Render()).whenDrained.add(r);
+            }
+        }
+
+        private void finished(int id){
+            if(id == UNTAGGED) return;
+            Render r;
+            synchronized(renders){
+                r = renders.get(id);
+                if(--r.tasks > 0) return;
+                renders.remove(id);
+            }
+            for(Runnable c : r.whenDrained) c.run();
+        }
+
+        // remove every queued task of a render older than id
+        void purgeBefore(int id){
+            List<ForkJoinTask<?>> drained = new ArrayList<>();
+            pool.drainTo(drained);
+            int removed = 0;
+            for(ForkJoinTask<?> t : drained){
+                if(t instanceof RenderTask && ((RenderTask) t).id < id){
+                    t.cancel(false);
+                    finished(((RenderTask) t).id);
+                    removed++;
+                } else {
+                    pool.execute(t);
+                }
+            }
+            lastPurged = removed;
+            purged.addAndGet(removed);
+        }
+
+        int depth(){
+            return pool.getQueuedSubmissionCount() + (int)pool.getQueuedTaskCount();
+        }
+    }
+
+    // what escapeSpan did, summed over the spans of a tile
+    static final class SpanCounts {
+        long pixels;     // escaped or answered by the interior test
+        long iterations; // executed by the kernel or the perturbation loop
+        long skipped;    // answered by the interior test without iterating
+    }
+
+    // the number of the n pixels the interior test answered without iterating
+    static long escapeSpan(Kernel kernel, View view, int py, int x0, int step, int n, int[] iters, double[] mag2){
+        final SpanCounts counts = new SpanCounts();
+        escapeSpan(kernel, view, py, x0, step, n, iters, mag2, counts);
+        return counts.skipped;
+    }
+
+    /*
+    * Escape pixels x0, x0+step, ... (n of them) of row py, picking the right engine for the view:
+    * perturbation when deep, otherwise the kernel, after the interior test in Mandelbrot mode.
+    * Adds the pixels, the iterations executed and the pixels the interior test answered to counts.
+    */
+    static void escapeSpan(Kernel kernel, View view, int py, int x0, int step, int n, int[] iters, double[] mag2,
+                           SpanCounts counts){
+        counts.pixels += n;
+        // square pixels: the view's width spans the image width. Past FLOATEXP_SCALE the pixel
+        // size does not fit a double, so the offsets below are in units of 2^exp instead
+        final int exp = view.extended() ? view.pixel.exponent : 0;
+        final double pixel = exp != 0 ? view.pixel.mantissa : view.pixel.toDouble();
+        final int maxIter = view.maxIter;
+        final boolean deep = view.deep(), doubleDouble = view.doubleDouble();
+        // deeper views work with offsets from the center, shallow ones with absolute coordinates
+        final double cX = deep || doubleDouble ? 0 : view.centerX;
+        final double cY = deep || doubleDouble ? 0 : view.centerY;
+
+        final double[] re = new double[n];
+        for(int i = 0; i < n; i++){
+            re[i] = cX + ((x0 + i * step - view.width/2.0) * pixel);
+        }
+        final double y0c = cY + ((py - view.height/2.0) * pixel);
+
+        if(deep){
+            counts.iterations += view.escapeDeep(re, y0c, exp, n, iters, mag2);
+            return;
+        }
+        final double cycleEps = cycleTolerance(pixel);
+        if(doubleDouble){
+            // no interior test: its double arithmetic cannot place the bulbs' edges this finely
+            counts.iterations += DoubleDouble.escapeRow(view.centerXHi, view.centerXLo, view.centerYHi, view.centerYLo,
+                    re, y0c, n, maxIter, view.julia, view.jc, view.ji, cycleEps, iters, mag2);
+            return;
+        }
+        if(view.julia){
+            counts.iterations += kernel.escapeRow(re, y0c, n, maxIter, true, view.jc, view.ji, cycleEps, iters, mag2);
+            return;
+        }
+        // Mandelbrot pixels left for the kernel once the interior test has run (compacted)
+        final double[] outRe = new double[n];
+        final int[] outIdx = new int[n];
+        int m = 0;
+        for(int i = 0; i < n; i++){
+            if(inMainBulbs(re[i], y0c)){
+                iters[i] = maxIter;
+            } else {
+                outRe[m] = re[i]; outIdx[m] = i; m++;
+            }
+        }
+        if(m == n){
+            counts.iterations += kernel.escapeRow(re, y0c, n, maxIter, false, 0, 0, cycleEps, iters, mag2);
+            return;
+        }
+        final int[] outIters = new int[m];
+        final double[] outMag2 = new double[m];
+        counts.iterations += kernel.escapeRow(outRe, y0c, m, maxIter, false, 0, 0, cycleEps, outIters, outMag2);
+        for(int k = 0; k < m; k++){
+            iters[outIdx[k]] = outIters[k];
+            mag2[outIdx[k]] = outMag2[k];
+        }
+        counts.skipped += n - m;
+    }
+
+    /*
+    * Mariani-Silver renderer. A rectangle whose border is already escaped is filled without
+    * iterating its inside when every border pixel has the same iteration count; otherwise the
+    * rectangle is cut in two along its longer side, the cut line is escaped, and one half is
+    * handed to the executor as a new task (any idle worker picks it up) while this worker
+    * carries on with the other. Small rectangles are simply escaped pixel by pixel.
+    */
+    static final class Subdivider {
+        static final int MIN_SIZE = 8; // rectangles this narrow are not worth splitting again
+
+        final Kernel kernel;
+        final View view;
+        final float[] nu; // the frame's smooth iteration counts
+        final int w, h;
+        final Executor executor;
+        final BooleanSupplier cancelled;
+        Runnable onDone = () -> {};
+        Telemetry telemetry; // null: rectangles are not reported as tiles
+        int id = RenderScheduler.UNTAGGED; // the render they are reported under
+
+        final int[] iters;
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicLong skipped = new AtomicLong(); // answered by the interior test
+        final AtomicLong filled = new AtomicLong();  // filled from a uniform border
+
+        Subdivider(Kernel kernel, IterFrame frame, Executor executor, BooleanSupplier cancelled){
+            this.kernel = kernel; this.view = frame.view; this.nu = frame.nu;
+            this.w = frame.width; this.h = frame.height;
+            this.iters = new int[w * h];
+            this.executor = executor; this.cancelled = cancelled;
+        }
+
+        void start(){
+            pending.set(1);
+            executor.execute(() -> {
+                if(!cancelled.getAsBoolean()){
+                    measure(0, 0, w - 1, h - 1, counts -> {
+                        // the frame border, after which every rectangle arrives with its border done
+                        escapeRow(0, 0, w - 1, counts);
+                        escapeRow(h - 1, 0, w - 1, counts);
+                        escapeColumn(0, 1, h - 2, counts);
+                        escapeColumn(w - 1, 1, h - 2, counts);
+                        subdivide(0, 0, w - 1, h - 1, counts);
+                    });
+                }
+                finish();
+            });
+        }
+
+        private void finish(){
+            if(pending.decrementAndGet() == 0 && !cancelled.getAsBoolean()) onDone.run();
+        }
+
+        // one task's work on the rectangle [x0, x1] x [y0, y1], reported to the telemetry as a tile
+        private void measure(int x0, int y0, int x1, int y1, Consumer<SpanCounts> work){
+            final TileEvent event = new TileEvent();
+            event.begin();
+            final long t0 = System.nanoTime();
+            final SpanCounts counts = new SpanCounts();
+            work.accept(counts);
+            skipped.addAndGet(counts.skipped);
+            if(telemetry != null){
+                telemetry.tile(event, id, x0, y0, x1 - x0 + 1, y1 - y0 + 1, 1, System.nanoTime() - t0, counts,
+                        cancelled.getAsBoolean());
+            }
+        }
+
+        private void process(int x0, int y0, int x1, int y1){
+            measure(x0, y0, x1, y1, counts -> subdivide(x0, y0, x1, y1, counts));
+        }
+
+        // rectangle [x0, x1] x [y0, y1], inclusive, with its border already escaped; the part
+        // not forked off is done here, its escapes added to counts
+        private void subdivide(int x0, int y0, int x1, int y1, SpanCounts counts){
+            while(true){
+                if(cancelled.getAsBoolean()) return;
+                if(x1 - x0 < 2 || y1 - y0 < 2) return; // no inside left
+                if(uniformBorder(x0, y0, x1, y1)){
+                    fill(x0, y0, x1, y1);
+                    return;
+                }
+                if(x1 - x0 <= MIN_SIZE && y1 - y0 <= MIN_SIZE){
+                    for(int y = y0 + 1; y < y1; y++) escapeRow(y, x0 + 1, x1 - 1, counts);
+                    return;
+                }
+                final int cx0 = x0, cy0 = y0, cx1 = x1, cy1 = y1;
+                if(x1 - x0 >= y1 - y0){
+                    final int xm = (x0 + x1) >>> 1;
+                    escapeColumn(xm, y0 + 1, y1 - 1, counts);
+                    fork(() -> process(xm, cy0, cx1, cy1));
+                    x1 = xm;
+                } else {
+                    final int ym = (y0 + y1) >>> 1;
+                    escapeRow(ym, x0 + 1, x1 - 1, counts);
+                    fork(() -> process(cx0, ym, cx1, cy1));
+                    y1 = ym;
+                }
+            }
+        }
+
+        private void fork(Runnable r){
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                r.run();
+                finish();
+            });
+        }
+
+        private boolean uniformBorder(int x0, int y0, int x1, int y1){
+            final int k = iters[y0 * w + x0];
+            for(int x = x0; x <= x1; x++){
+                if(iters[y0 * w + x] != k || iters[y1 * w + x] != k) return false;
+            }
+            for(int y = y0 + 1; y < y1; y++){
+                if(iters[y * w + x0] != k || iters[y * w + x1] != k) return false;
+            }
+            return true;
+        }
+
+        // inside of a uniform rectangle: same count, smooth value interpolated between left and right border
+        private void fill(int x0, int y0, int x1, int y1){
+            final int k = iters[y0 * w + x0];
+            final int maxIter = view.maxIter;
+            for(int y = y0 + 1; y < y1; y++){
+                final float left = nu[y * w + x0], right = nu[y * w + x1];
+                for(int x = x0 + 1; x < x1; x++){
+                    final int i = y * w + x;
+                    iters[i] = k;
+                    nu[i] = k >= maxIter ? IterFrame.INSIDE : left + (right - left) * (x - x0) / (x1 - x0);
+                }
+            }
+            filled.addAndGet((long)(x1 - x0 - 1) * (y1 - y0 - 1));
+        }
+
+        private void escapeRow(int y, int x0, int x1, SpanCounts counts){
+            final int n = x1 - x0 + 1;
+            if(n <= 0) return;
+            final int[] it = new int[n];
+            final double[] m2 = new double[n];
+            escapeSpan(kernel, view, y, x0, 1, n, it, m2, counts);
+            for(int k = 0; k < n; k++) store(x0 + k, y, it[k], m2[k]);
+        }
+
+        private void escapeColumn(int x, int y0, int y1, SpanCounts counts){
+            final int[] it = new int[1];
+            final double[] m2 = new double[1];
+            for(int y = y0; y <= y1; y++){
+                escapeSpan(kernel, view, y, x, 1, 1, it, m2, counts);
+                store(x, y, it[0], m2[0]);
+            }
+        }
+
+        private void store(int x, int y, int iter, double mag2){
+            final int i = y * w + x;
+            iters[i] = iter;
+            nu[i] = iter >= view.maxIter ? IterFrame.INSIDE : (float)smoothIter(iter, mag2);
+        }
+    }
+
+    static final double INV_LOG2 = 1 / Math.log(2);
+
+    // smooth iteration count for continuous coloring
+    static double smoothIter(int iter, double mag2){
+        double log_zn = Math.log(mag2) / 2.0;
+        return iter + 1 - Math.log(log_zn) * INV_LOG2;
+    }
+
+    /*
+    * A cyclic color gradient. The default is the HSB hue wheel the renderer always used;
+    * the others are evenly spaced color stops, interpolated linearly and wrapping around.
+    * -Dfractal.palette=#000764,#206bcb,#edffff,... adds a user palette (selected at startup).
+    */
+    static final class Palette {
+        final String name;
+        final int[] stops; // null for the hue wheel
+
+        Palette(String name, int[] stops){
+            this.name = name; this.stops = stops;
+        }
+
+        static List<Palette> available(){
+            List<Palette> list = new ArrayList<>();
+            list.add(new Palette("ultra", parseStops("#000764,#206bcb,#edffff,#ffaa00,#000200")));
+            list.add(new Palette("fire", parseStops("#000000,#7f0000,#ff6000,#ffff80,#ff6000,#7f0000")));
+            list.add(new Palette("gray", parseStops("#101010,#f0f0f0")));
+            list.add(new Palette("hue", null));
+            String user = System.getProperty("fractal.palette");
+            if(user != null){
+                try {
+                    list.add(new Palette("custom", parseStops(user)));
+                } catch(IllegalArgumentException e){
+                    System.err.println("Bad palette '" + user + "': " + e.getMessage());
+                }
+            }
+            return list;
+        }
+
+        static int[] parseStops(String spec){
+            String[] parts = spec.split(",");
+            int[] stops = new int[parts.length];
+            for(int i = 0; i < parts.length; i++){
+                stops[i] = Integer.parseInt(parts[i].trim().replace("#", ""), 16) & 0xFFFFFF;
+            }
+            return stops;
+        }
+
+        // color at position t in [0, 1) of the cycle
+        int colorAt(double t){
+            if(stops == null) return Color.HSBtoRGB((float)t, 0.8f, 0.7f) & 0xFFFFFF;
+            double f = t * stops.length;
+            int i = (int)f;
+            int a = stops[i % stops.length], b = stops[(i + 1) % stops.length];
+            double w = f - i;
+            int r = (int)Math.round(((a >> 16) & 0xFF) * (1 - w) + ((b >> 16) & 0xFF) * w);
+            int g = (int)Math.round(((a >> 8) & 0xFF) * (1 - w) + ((b >> 8) & 0xFF) * w);
+            int bl = (int)Math.round((a & 0xFF) * (1 - w) + (b & 0xFF) * w);
+            return (r << 16) | (g << 8) | bl;
+        }
+    }
+
+    /*
+    * Dense RGB lookup table for one palette cycle, indexed by the smooth iteration count.
+    * A cycle spans maxIter/10 iterations (starting at 0.95 of the cycle), as the hue
+    * mapping always did, so the table depends only on the palette and maxIter.
+    */
+    static final class ColorTable {
+        static final int SIZE = 4096; // entries per cycle, a power of two
+
+        final Palette palette;
+        final int maxIter;
+        final int[] rgb = new int[SIZE];
+        final double indexPerIter;
+
+        ColorTable(Palette palette, int maxIter){
+            this.palette = palette;
+            this.maxIter = maxIter;
+            this.indexPerIter = 10.0 * SIZE / maxIter;
+            for(int i = 0; i < SIZE; i++) rgb[i] = palette.colorAt((double)i / SIZE);
+        }
+
+        // phase rotates the palette by that many table entries
+        int color(double nu, int phase){
+            return rgb[((int)Math.floor(0.95 * SIZE + nu * indexPerIter) + phase) & (SIZE - 1)];
+        }
+    }
+
+    // periodicity tolerance: a small fraction of the pixel size, so it never decides a visible boundary
+    static double cycleTolerance(double pixel){
+        return CYCLE_DETECTION ? pixel * 1e-3 : 0;
+    }
+
+    // c inside the main cardioid or the period-2 bulb: never escapes, no need to iterate
+    static boolean inMainBulbs(double x, double y){
+        double y2 = y*y;
+        double xq = x - 0.25;
+        double q = xq*xq + y2;
+        if(q * (q + xq) <= 0.25 * y2) return true;
+        double xb = x + 1.0;
+        return xb*xb + y2 <= 0.0625;
+    }
+
+    /*
+    * A number kept as a double mantissa and a separate int exponent, mantissa * 2^exponent, so
+    * its magnitude is not bounded by the double's 1e-308: the view width (and pixel size) of
+    * arbitrarily deep zooms. The mantissa's magnitude is in [1, 2), or it is 0. Immutable; the
+    * perturbation loop inlines the same representation for its deltas (ReferenceOrbit.escapeRow).
+    */
+    static final class FloatExp implements Comparable<FloatExp> {
+        static final double LOG10_2 = Math.log10(2), LOG2_10 = 1 / LOG10_2;
+
+        final double mantissa;
+        final int exponent;
+
+        private FloatExp(double mantissa, int exponent){
+            this.mantissa = mantissa; this.exponent = exponent;
+        }
+
+        // v * 2^exp
+        static FloatExp of(double v, int exp){
+            if(v == 0 || Double.isNaN(v) || Double.isInfinite(v)) return new FloatExp(v, 0);
+            if(Math.getExponent(v) < Double.MIN_EXPONENT){ // subnormal: lift it into the normal range
+                v *= 0x1p60;
+                exp -= 60;
+            }
+            final int e = Math.getExponent(v);
+            return new FloatExp(Math.scalb(v, -e), exp + e);
+        }
+
+        static FloatExp of(double v){
+            return of(v, 0);
+        }
+
+        static FloatExp of(BigDecimal v){
+            final double d = v.doubleValue();
+            if(v.signum() == 0 || Math.abs(d) >= Double.MIN_NORMAL) return of(d);
+            // too small for a double: scale it up by an exact power of two first
+            final int k = (int)Math.ceil((v.scale() - v.precision() + 1) * LOG2_10) + 60;
+            return of(v.multiply(new BigDecimal(java.math.BigInteger.ONE.shiftLeft(k))).doubleValue(), -k);
+        }
+
+        // decimal notation, any magnitude: "1e-500"
+        static FloatExp parse(String s){
+            return of(new BigDecimal(s.trim()));
+        }
+
+        FloatExp mul(double k){
+            return of(mantissa * k, exponent);
+        }
+
+        FloatExp div(double k){
+            return of(mantissa / k, exponent);
+        }
+
+        FloatExp div(FloatExp o){
+            return of(mantissa / o.mantissa, exponent - o.exponent);
+        }
+
+        // the value as a double: 0 (or subnormal) once it is below the double's range
+        double toDouble(){
+            return Math.scalb(mantissa, exponent);
+        }
+
+        // exact
+        BigDecimal toBigDecimal(){
+            if(exponent >= Double.MIN_EXPONENT) return new BigDecimal(toDouble());
+            // 2^-n = 5^n / 10^n
+            final int n = -exponent;
+            return new BigDecimal(mantissa).multiply(new BigDecimal(java.math.BigInteger.valueOf(5).pow(n), n));
+        }
+
+        double log10(){
+            return Math.log10(Math.abs(mantissa)) + exponent * LOG10_2;
+        }
+
+        @Override
+        public int compareTo(FloatExp o){
+            final int s = Double.compare(Math.signum(mantissa), Math.signum(o.mantissa));
+            if(s != 0 || mantissa == 0) return s;
+            final int c = exponent != o.exponent ? Integer.compare(exponent, o.exponent) : Double.compare(Math.abs(mantissa), Math.abs(o.mantissa));
+            return mantissa > 0 ? c : -c;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof FloatExp && ((FloatExp) o).mantissa == mantissa && ((FloatExp) o).exponent == exponent;
+        }
+
+        @Override
+        public int hashCode(){
+            return Double.hashCode(mantissa) * 31 + exponent;
+        }
+
+        @Override
+        public String toString(){
+            if(exponent >= Double.MIN_EXPONENT && exponent <= Double.MAX_EXPONENT) return String.format("%.6g", toDouble());
+            final double l = log10();
+            final int d = (int)Math.floor(l);
+            return String.format("%.5fe%d", Math.signum(mantissa) * Math.pow(10, l - d), d);
+        }
+    }
+
+    // Immutable snapshot of the render parameters, taken when a render is triggered
+    static final class View {
+        final double centerX, centerY;
+        final FloatExp scale, pixel; // pixel = scale / width
+        final BigDecimal hpCenterX, hpCenterY;
+        final int width, height; // image size in pixels; scale spans the width
+        final int maxIter;
+        final boolean julia;
+        final double jc, ji;
+        final double centerXHi, centerXLo, centerYHi, centerYLo; // the exact center rounded to double-doubles
+        private volatile ReferenceOrbit orbit;
+        private ReferenceOrbit panned; // the orbit of the view this one was panned from, see panFrom
+        private int orbitX, orbitY; // where the primary reference sits, in pixels from the center
+        // one slot per secondary reference, completed by the tile that made it (null if that was
+        // cancelled); the list is guarded by itself, the references are computed outside the lock
+        private final List<CompletableFuture<ReferenceOrbit>> secondaries = new ArrayList<>();
+        BooleanSupplier cancelled = () -> false; // set by triggerRender before any tile runs
+
+        View(double centerX, double centerY, BigDecimal hpCenterX, BigDecimal hpCenterY, double scale,
+             int maxIter, boolean julia, double jc, double ji){
+            this(centerX, centerY, hpCenterX, hpCenterY, scale, W, H, maxIter, julia, jc, ji);
+        }
+
+        View(double centerX, double centerY, BigDecimal hpCenterX, BigDecimal hpCenterY, double scale,
+             int width, int height, int maxIter, boolean julia, double jc, double ji){
+            this(centerX, centerY, hpCenterX, hpCenterY, FloatExp.of(scale), width, height, maxIter, julia, jc, ji);
+        }
+
+        View(double centerX, double centerY, BigDecimal hpCenterX, BigDecimal hpCenterY, FloatExp scale,
+             int width, int height, int maxIter, boolean julia, double jc, double ji){
+            this.centerX = centerX; this.centerY = centerY;
+            this.hpCenterX = hpCenterX; this.hpCenterY = hpCenterY;
+            this.scale = scale; this.pixel = scale.div(width); this.width = width; this.height = height; this.maxIter = maxIter;
+            this.julia = julia; this.jc = jc; this.ji = ji;
+            centerXHi = hpCenterX.doubleValue();
+            centerXLo = hpCenterX.subtract(new BigDecimal(centerXHi)).doubleValue();
+            centerYHi = hpCenterY.doubleValue();
+            centerYLo = hpCenterY.subtract(new BigDecimal(centerYHi)).doubleValue();
+        }
+
+        // the scales are view widths at the default W; what runs out is the pixel size
+        boolean deep(){
+            return pixel.compareTo(FloatExp.of(PERTURBATION_SCALE / W)) < 0;
+        }
+
+        boolean doubleDouble(){
+            return !deep() && pixel.compareTo(FloatExp.of(DEEP_SCALE / W)) < 0;
+        }
+
+        // pixel offsets too small for a double: the perturbation deltas start out as floatexp
+        boolean extended(){
+            return pixel.compareTo(FloatExp.of(FLOATEXP_SCALE / W)) < 0;
+        }
+
+        // what escapes this view: the perturbation engine, the double-double loop or the kernel
+        String engine(Kernel kernel){
+            return deep() ? "perturbation" : doubleDouble() ? "double-double" : kernel.name().toLowerCase();
+        }
+
+        // primary reference orbit, at the center unless reused from a pan: made by the first tile
+        // that needs it, shared by the rest. null once the render is cancelled, which the
+        // BigDecimal loop checks as it goes, so stale tiles queued behind it are not held up
+        synchronized ReferenceOrbit orbit(){
+            if(orbit == null){
+                orbit = panned != null ? panned.panned(this, orbitX, orbitY) : ReferenceOrbit.compute(this);
+                if(orbit != null) panned = null;
+            }
+            return orbit;
+        }
+
+        // this view is prev moved by whole pixels, its pixel (x, y) being prev's (x + sx, y + sy).
+        // If prev's reference orbit is already made and still lies inside this frame, it becomes
+        // this view's primary too, off-center, and only the per-frame tables are made again
+        void panFrom(View prev, int sx, int sy){
+            final ReferenceOrbit o = prev.orbit; // one still being made is not waited for
+            final int x = prev.orbitX - sx, y = prev.orbitY - sy;
+            if(o == null || !deep() || Math.abs(x) > width / 2 || Math.abs(y) > height / 2) return;
+            panned = o;
+            orbitX = x; orbitY = y;
+        }
+
+        // reference orbits the frame has used so far: the center's and the secondaries; 0 if not deep
+        int references(){
+            if(!deep()) return 0;
+            int n = 1;
+            synchronized(secondaries){
+                for(CompletableFuture<ReferenceOrbit> slot : secondaries) if(slot.getNow(null) != null || !slot.isDone()) n++;
+            }
+            return n;
+        }
+
+        /*
+        * Perturbation escape of a row span (offsets as for ReferenceOrbit.escapeRow). Pixels the
+        * center's reference leaves glitched are retried against the secondary references in the
+        * order they were made, and when those run out a new one is made for the worst glitch
+        * left, the pixel whose orbit came closest to 0 against its reference (see secondary).
+        * Secondaries are shared by all tiles of the frame, so a glitch blob usually gets one
+        * reference however many tiles it spans. Past REFERENCES the pixels left are escaped as if
+        * there were only the center's.
+        */
+        long escapeDeep(double[] dre, double dim, int exp, int n, int[] iters, double[] mag2){
+            final ReferenceOrbit primary = orbit();
+            if(primary == null) return 0; // cancelled
+            double[] pre = dre; // offsets from the primary, which a pan can leave off-center
+            if(primary.offsetRe != 0){
+                pre = new double[n];
+                for(int i = 0; i < n; i++) pre[i] = dre[i] - primary.offsetRe;
+            }
+            final double pim = dim - primary.offsetIm;
+            if(REFERENCES < 2) return primary.escapeRow(pre, pim, exp, n, maxIter, iters, mag2, null);
+            boolean[] glitched = new boolean[n];
+            long executed = primary.escapeRow(pre, pim, exp, n, maxIter, iters, mag2, glitched);
+            final int[] idx = new int[n];
+            int left = 0;
+            for(int i = 0; i < n; i++) if(glitched[i]) idx[left++] = i;
+            if(left == 0) return executed;
+
+            final double[] re = new double[left], m2 = new double[left];
+            final int[] it = new int[left];
+            for(int k = 0; left > 0; k++){
+                int worst = idx[0];
+                for(int j = 1; j < left; j++) if(mag2[idx[j]] < mag2[worst]) worst = idx[j];
+                // the glitched orbit came close to 0 at the iteration its count was left at, and
+                // the nucleus with that period is nearby; orbits start at Z_0 = c, one step from 0
+                final ReferenceOrbit ref = secondary(k, dre[worst], dim, exp, iters[worst] + 1);
+                if(ref == null){
+                    if(cancelled.getAsBoolean()) return executed;
+                    break;
+                }
+                for(int j = 0; j < left; j++) re[j] = dre[idx[j]] - ref.offsetRe;
+                glitched = new boolean[left];
+                executed += ref.escapeRow(re, dim - ref.offsetIm, exp, left, maxIter, it, m2, glitched);
+                int still = 0;
+                for(int j = 0; j < left; j++){
+                    iters[idx[j]] = it[j];
+                    mag2[idx[j]] = m2[j];
+                    if(glitched[j]) idx[still++] = idx[j];
+                }
+                left = still;
+            }
+            if(left > 0){
+                // out of references: the center's, without the glitch test, as with REFERENCES 1
+                for(int j = 0; j < left; j++) re[j] = pre[idx[j]];
+                executed += primary.escapeRow(re, pim, exp, left, maxIter, it, m2, null);
+                for(int j = 0; j < left; j++){
+                    iters[idx[j]] = it[j];
+                    mag2[idx[j]] = m2[j];
+                }
+            }
+            return executed;
+        }
+
+        // the k-th secondary reference if there are only k so far, made for the glitch at offset
+        // (re, im) * 2^exp: at the nucleus of the given period near it when there is one (Mandelbrot
+        // mode), else at the pixel itself. null once the frame has REFERENCES, or when the render
+        // was cancelled while it was being made. Tiles asking for a slot someone else is filling
+        // wait for it; the others keep escaping
+        private ReferenceOrbit secondary(int k, double re, double im, int exp, int period){
+            final CompletableFuture<ReferenceOrbit> slot;
+            final boolean made;
+            synchronized(secondaries){
+                made = k >= secondaries.size();
+                if(made){
+                    if(secondaries.size() + 1 >= REFERENCES) return null;
+                    secondaries.add(new CompletableFuture<>());
+                }
+                slot = secondaries.get(k);
+            }
+            if(!made) return slot.join();
+            ReferenceOrbit ref = null;
+            try {
+                final double[] at = julia || period < 1 ? null : ReferenceOrbit.nucleus(this, re, im, exp, period, cancelled);
+                ref = at == null ? ReferenceOrbit.compute(this, re, im, exp, cancelled)
+                        : ReferenceOrbit.compute(this, at[0], at[1], exp, cancelled);
+            } finally {
+                slot.complete(ref);
+            }
+            return ref;
+        }
+    }
+
+    /*
+    * Perturbation engine for deep zooms. One reference orbit Z_n is iterated at the view center
+    * in BigDecimal, rounded to doubles, and each pixel only iterates its offset d_n = z_n - Z_n:
+    *   d_{n+1} = 2*Z_n*d_n + d_n^2 + dc      (dc = pixel offset in Mandelbrot mode, 0 for Julia)
+    * The offsets stay small, so plain doubles keep full relative precision at any zoom depth.
+    * Except where the pixel's orbit passes much closer to 0 than the reference's: its offset then
+    * cancels most of Z_n and the precision is gone. escapeRow flags those pixels (Pauldelbrot's
+    * test, |Z_n + d_n| < GLITCH_TOLERANCE |Z_n|) so they can be redone against a reference that
+    * fits them better, computed the same way near the glitch (see View.escapeDeep).
+    */
+    static final class ReferenceOrbit {
+        static final double GLITCH_TOLERANCE = 1e-3;
+        static final int NEWTON_STEPS = 24;
+        static final double NEWTON_ESCAPED = 1e100;
+
+        final double[] zr, zi; // Z_0 .. Z_{length-1}; the last one is past the bailout if the reference escaped
+        final int length;
+        final boolean julia;
+        final double cRe, cIm; // c of the continuation when a pixel outlives the reference
+        final BlaTable bla; // null: every iteration is stepped
+        final SeriesApprox series; // null: every pixel starts at iteration 0
+        final double offsetRe, offsetIm; // from the view center, in the units of the pixel offsets
+
+        private ReferenceOrbit(double[] zr, double[] zi, int length, boolean julia, double cRe, double cIm,
+                               BlaTable bla, SeriesApprox series, double offsetRe, double offsetIm){
+            this.zr = zr; this.zi = zi; this.length = length;
+            this.julia = julia; this.cRe = cRe; this.cIm = cIm; this.bla = bla; this.series = series;
+            this.offsetRe = offsetRe; this.offsetIm = offsetIm;
+        }
+
+        // the same orbit iterated step by step from iteration 0, for --check-perturbation
+        ReferenceOrbit stepped(){
+            return new ReferenceOrbit(zr, zi, length, julia, cRe, cIm, null, null, offsetRe, offsetIm);
+        }
+
+        // this orbit as the primary reference of v, a view panned from the one it was made for,
+        // at (refX, refY) pixels from v's center. The BigDecimal orbit is kept; the BLA table
+        // and the series depend on where the frame's pixels lie, so they are made for v
+        ReferenceOrbit panned(View v, int refX, int refY){
+            final int exp = v.extended() ? v.pixel.exponent : 0;
+            final double unit = exp != 0 ? v.pixel.mantissa : v.pixel.toDouble();
+            final double dcMax = julia ? 0 : v.pixel.mul(Math.hypot(v.width/2.0 + Math.abs(refX), v.height/2.0 + Math.abs(refY))).toDouble();
+            return new ReferenceOrbit(zr, zi, length, julia, cRe, cIm,
+                    BLA ? BlaTable.build(zr, zi, length, julia, dcMax) : null,
+                    SERIES ? SeriesApprox.build(zr, zi, length, v.maxIter, julia, v.pixel, refX, refY, v.width, v.height) : null,
+                    refX * unit, refY * unit);
+        }
+
+        // the view's primary reference, at its center; null once the view's render is cancelled
+        static ReferenceOrbit compute(View v){
+            return compute(v, 0, 0, 0, v.cancelled);
+        }
+
+        // a reference at offset (offsetRe, offsetIm) * 2^exp from the view center; only the
+        // primary gets a series approximation, its corners being the frame's. null if cancelled
+        static ReferenceOrbit compute(View v, double offsetRe, double offsetIm, int exp, BooleanSupplier cancelled){
+            final boolean primary = offsetRe == 0 && offsetIm == 0;
+            MathContext mc = precisionFor(v.scale);
+            BigDecimal kr = v.julia ? new BigDecimal(v.jc) : v.hpCenterX;
+            BigDecimal ki = v.julia ? new BigDecimal(v.ji) : v.hpCenterY;
+            BigDecimal x = v.hpCenterX, y = v.hpCenterY;
+            if(!primary){
+                x = x.add(FloatExp.of(offsetRe, exp).toBigDecimal());
+                y = y.add(FloatExp.of(offsetIm, exp).toBigDecimal());
+                if(!v.julia){
+                    kr = x; ki = y;
+                }
+            }
+            BigDecimal two = BigDecimal.valueOf(2);
+
+            double[] zr = new double[v.maxIter + 1], zi = new double[v.maxIter + 1];
+            int n = 0;
+            while(true){
+                double dx = x.doubleValue(), dy = y.doubleValue();
+                zr[n] = dx; zi[n] = dy;
+                n++;
+                if(n > v.maxIter || dx*dx + dy*dy > 4.0) break;
+                if(cancelled.getAsBoolean()) return null;
+                BigDecimal nx = x.multiply(x, mc).subtract(y.multiply(y, mc), mc).add(kr, mc);
+                y = two.multiply(x, mc).multiply(y, mc).add(ki, mc);
+                x = nx;
+            }
+            // the largest pixel offset of the frame, at its corners; it is |dc| in Mandelbrot mode.
+            // From a secondary inside the frame no pixel is further than the diagonal
+            final FloatExp corner = v.pixel.mul(Math.hypot(v.width, v.height) / 2);
+            final double dcMax = v.julia ? 0 : corner.toDouble() * (primary ? 1 : 2);
+            final double cRe = v.julia ? v.jc : primary ? v.centerX : x.doubleValue();
+            final double cIm = v.julia ? v.ji : primary ? v.centerY : y.doubleValue();
+            return new ReferenceOrbit(zr, zi, n, v.julia, cRe, cIm,
+                    BLA ? BlaTable.build(zr, zi, n, v.julia, dcMax) : null,
+                    SERIES && primary ? SeriesApprox.build(zr, zi, n, v.maxIter, v.julia, v.pixel, 0, 0, v.width, v.height) : null,
+                    offsetRe, offsetIm);
+        }
+
+        /*
+        * Newton's method for the nucleus of the given period nearest offset (re, im) * 2^exp: the c
+        * whose orbit returns to exactly 0 at that iteration. A pixel failing the glitch test came
+        * close to doing so, so one usually lies within a few pixels, and a reference there is
+        * periodic: it never escapes, which makes it fit the whole minibrot and its surroundings.
+        * Returns the nucleus' offset in the same units, or null when Newton leaves the frame or
+        * has not settled to a thousandth of a pixel after NEWTON_STEPS, when an iterate's orbit
+        * escapes past NEWTON_ESCAPED, or once cancelled.
+        */
+        static double[] nucleus(View v, double re, double im, int exp, int period, BooleanSupplier cancelled){
+            final MathContext mc = precisionFor(v.scale);
+            final BigDecimal two = BigDecimal.valueOf(2);
+            final double frame2 = (double)v.width * v.width + (double)v.height * v.height; // in pixels^2
+            BigDecimal cr = v.hpCenterX.add(FloatExp.of(re, exp).toBigDecimal());
+            BigDecimal ci = v.hpCenterY.add(FloatExp.of(im, exp).toBigDecimal());
+            for(int step = 0; step < NEWTON_STEPS; step++){
+                BigDecimal zr = BigDecimal.ZERO, zi = BigDecimal.ZERO, dr = BigDecimal.ZERO, di = BigDecimal.ZERO;
+                for(int n = 0; n < period; n++){
+                    if(cancelled.getAsBoolean()) return null;
+                    // dz/dc first, from the old z: dz' = 2 z dz + 1, z' = z^2 + c
+                    final BigDecimal ndr = two.multiply(zr.multiply(dr, mc).subtract(zi.multiply(di, mc), mc), mc).add(BigDecimal.ONE, mc);
+                    di = two.multiply(zr.multiply(di, mc).add(zi.multiply(dr, mc), mc), mc);
+                    dr = ndr;
+                    final BigDecimal nzr = zr.multiply(zr, mc).subtract(zi.multiply(zi, mc), mc).add(cr, mc);
+                    zi = two.multiply(zr, mc).multiply(zi, mc).add(ci, mc);
+                    zr = nzr;
+                    // this c escapes well before the period is up: squaring on would overflow the
+                    // BigDecimal scale, and there is no nucleus this close anyway
+                    if(Math.abs(zr.doubleValue()) + Math.abs(zi.doubleValue()) > NEWTON_ESCAPED) return null;
+                }
+                final BigDecimal den = dr.multiply(dr, mc).add(di.multiply(di, mc), mc);
+                if(den.signum() == 0) return null;
+                final BigDecimal sr = zr.multiply(dr, mc).add(zi.multiply(di, mc), mc).divide(den, mc);
+                final BigDecimal si = zi.multiply(dr, mc).subtract(zr.multiply(di, mc), mc).divide(den, mc);
+                cr = cr.subtract(sr, mc);
+                ci = ci.subtract(si, mc);
+                // in pixels: the step, and the distance from the view center
+                final double stepPx = Math.hypot(FloatExp.of(sr).div(v.pixel).toDouble(), FloatExp.of(si).div(v.pixel).toDouble());
+                final double ox = FloatExp.of(cr.subtract(v.hpCenterX, mc)).div(v.pixel).toDouble();
+                final double oy = FloatExp.of(ci.subtract(v.hpCenterY, mc)).div(v.pixel).toDouble();
+                if(!(ox*ox + oy*oy <= frame2)) return null;
+                if(stepPx < 1e-3){
+                    final FloatExp fx = FloatExp.of(cr.subtract(v.hpCenterX, mc)), fy = FloatExp.of(ci.subtract(v.hpCenterY, mc));
+                    return new double[]{Math.scalb(fx.mantissa, fx.exponent - exp), Math.scalb(fy.mantissa, fy.exponent - exp)};
+                }
+            }
+            return null;
+        }
+
+        // same contract as Kernel.escapeRow, but the pixel offsets from this reference are
+        // dre[i] * 2^exp and dim * 2^exp; exp is 0 unless the view is extended. A jump through
+        // the BLA table counts as one executed iteration, the series' skip as none. With glitched,
+        // pixels failing the glitch test stop there, flagged, with |z|^2 / |Z|^2 in mag2; pixels
+        // outliving the reference are flagged with 1, and the count of the iteration at which
+        // their orbit came closest to 0.
+        long escapeRow(double[] dre, double dim, int exp, int n, int maxIter, int[] iters, double[] mag2,
+                       boolean[] glitched){
+            long executed = 0;
+            // pixel offset to the series' variable u
+            final double toU = series == null ? 0 : Math.scalb(1 / series.radius.mantissa, exp - series.radius.exponent);
+            for(int i = 0; i < n; i++){
+                double dx, dy, dcx, dcy;
+                int iter = 0;
+                double sx = 0, sy = 0; // the delta after the series' skip, in units of 2^series.exponent
+                if(series != null){
+                    final double ux = dre[i] * toU, uy = dim * toU;
+                    for(int k = SeriesApprox.TERMS - 1; k >= 0; k--){
+                        final double nx = sx*ux - sy*uy + series.dr[k];
+                        sy = sx*uy + sy*ux + series.di[k];
+                        sx = nx;
+                    }
+                    final double nx = sx*ux - sy*uy;
+                    sy = sx*uy + sy*ux;
+                    sx = nx;
+                    iter = series.skip;
+                    executed -= iter;
+                }
+                if(exp == 0){
+                    dcx = julia ? 0 : dre[i]; dcy = julia ? 0 : dim;
+                    if(series != null){
+                        dx = Math.scalb(sx, series.exponent); dy = Math.scalb(sy, series.exponent);
+                    } else {
+                        dx = dre[i]; dy = dim;
+                    }
+                } else {
+                    // the delta as FloatExp, (mx, my) * 2^e with the larger part in [1, 2), until it is
+                    // big enough for doubles. Its square is then under 2^-900 of it and is dropped;
+                    // the reference alone decides escapes, as the pixel sits on top of it.
+                    double mx = dre[i], my = dim;
+                    int e = exp;
+                    final double cmx = julia ? 0 : mx, cmy = julia ? 0 : my; // dc, in units of 2^exp
+                    if(series != null && (sx != 0 || sy != 0)){
+                        final int k = Math.getExponent(Math.max(Math.abs(sx), Math.abs(sy)));
+                        mx = Math.scalb(sx, -k); my = Math.scalb(sy, -k);
+                        e = series.exponent + k;
+                    }
+                    while(e < FLOATEXP_EXIT && iter < maxIter && iter + 1 < length
+                            && zr[iter]*zr[iter] + zi[iter]*zi[iter] <= 4.0){
+                        final double f = Math.scalb(1.0, exp - e);
+                        final int j = bla == null ? -1 : bla.level(iter, Math.scalb(mx*mx + my*my, 2*e), maxIter);
+                        if(j > 0){
+                            final int k = iter >> j;
+                            final double ar = bla.ar[j][k], ai = bla.ai[j][k], br = bla.br[j][k], bi = bla.bi[j][k];
+                            final double nx = ar*mx - ai*my + (br*cmx - bi*cmy)*f;
+                            my = ar*my + ai*mx + (br*cmy + bi*cmx)*f;
+                            mx = nx;
+                            iter += 1 << j;
+                            executed -= (1 << j) - 1;
+                        } else {
+                            final double rx = zr[iter], ry = zi[iter];
+                            final double nx = 2*(rx*mx - ry*my) + cmx*f;
+                            my = 2*(rx*my + ry*mx) + cmy*f;
+                            mx = nx;
+                            iter++;
+                        }
+                        if(mx != 0 || my != 0){
+                            final int k = Math.getExponent(Math.max(Math.abs(mx), Math.abs(my)));
+                            mx = Math.scalb(mx, -k); my = Math.scalb(my, -k);
+                            e += k;
+                        }
+                    }
+                    dx = Math.scalb(mx, e); dy = Math.scalb(my, e);
+                    dcx = Math.scalb(cmx, exp); dcy = Math.scalb(cmy, exp);
+                }
+
+                double zx = zr[iter] + dx, zy = zi[iter] + dy;
+                double m = zx*zx + zy*zy;
+                double closest = Double.MAX_VALUE; // the orbit's smallest |z|^2 so far, and where
+                int closestIter = 0;
+                while(iter < maxIter && m <= 4.0){
+                    if(glitched != null){
+                        if(m < closest){
+                            closest = m;
+                            closestIter = iter;
+                        }
+                        final double r2 = zr[iter]*zr[iter] + zi[iter]*zi[iter];
+                        if(m < GLITCH_TOLERANCE * GLITCH_TOLERANCE * r2){
+                            glitched[i] = true;
+                            m /= r2;
+                            break;
+                        }
+                    }
+                    if(iter + 1 >= length){
+                        if(glitched != null){
+                            // the reference escaped first: another one has to take over, best
+                            // placed at a real glitch, so these rank behind all of those
+                            glitched[i] = true;
+                            m = 1;
+                            iter = closestIter;
+                            break;
+                        }
+                        // the reference escaped first: finish this pixel with absolute doubles,
+                        // precise enough only when it is already close to the bailout
+                        double cx = julia ? cRe : cRe + dcx, cy = julia ? cIm : cIm + dcy;
+                        double zx2 = zx*zx, zy2 = zy*zy;
+                        while(iter < maxIter && zx2 + zy2 <= 4.0){
+                            zy = 2*zx*zy + cy;
+                            zx = zx2 - zy2 + cx;
+                            zx2 = zx*zx; zy2 = zy*zy;
+                            iter++;
+                        }
+                        m = zx2 + zy2;
+                        break;
+                    }
+                    final int j = bla == null ? -1 : bla.level(iter, dx*dx + dy*dy, maxIter);
+                    if(j > 0){
+                        // 2^j iterations in one linear step
+                        final int k = iter >> j;
+                        final double ar = bla.ar[j][k], ai = bla.ai[j][k], br = bla.br[j][k], bi = bla.bi[j][k];
+                        final double nx = ar*dx - ai*dy + br*dcx - bi*dcy;
+                        dy = ar*dy + ai*dx + br*dcy + bi*dcx;
+                        dx = nx;
+                        iter += 1 << j;
+                        executed -= (1 << j) - 1;
+                    } else {
+                        double rx = zr[iter], ry = zi[iter];
+                        double nx = 2*(rx*dx - ry*dy) + (dx*dx - dy*dy) + dcx;
+                        dy = 2*(rx*dy + ry*dx) + 2*dx*dy + dcy;
+                        dx = nx;
+                        iter++;
+                    }
+                    zx = zr[iter] + dx; zy = zi[iter] + dy;
+                    m = zx*zx + zy*zy;
+                }
+                iters[i] = iter;
+                mag2[i] = m;
+                executed += iter;
+            }
+            return executed;
+        }
+    }
+
+    /*
+    * Series approximation (SA) of the first iterations of a frame. Early on, every pixel's delta
+    * is a polynomial in its offset from the view center (dc in Mandelbrot mode, d_0 for Julia):
+    *   d_n = A_1,n x + A_2,n x^2 + ...                     (x = dc, or d_0)
+    *   A_1,n+1 = 2 Z_n A_1,n + 1 (0 for Julia),  A_k,n+1 = 2 Z_n A_k,n + sum over i+j=k of A_i,n A_j,n
+    * starting from A_1,0 = 1. Truncated to TERMS terms, the coefficients are iterated once per
+    * frame, next to the exact deltas of the frame's four corners, until the series misses one of
+    * the corners by more than TOLERANCE of its delta, or the frame could reach the bailout; every
+    * pixel then evaluates the polynomial and starts iterating there instead of at 0. The
+    * coefficients are stored as D_k = A_k s^k, s being the corner distance, so the polynomial is
+    * taken of u = x / s, |u| <= 1, and all of them share one binary exponent so that they fit
+    * doubles at extended depths too. -Dfractal.series=false starts every pixel at 0.
+    */
+    static final class SeriesApprox {
+        static final int TERMS = 12;
+        static final double TOLERANCE = 0x1p-32;
+
+        final int skip; // iterations every pixel starts past
+        final double[] dr, di; // D_1 .. D_TERMS at iteration skip, in units of 2^exponent
+        final int exponent;
+        final FloatExp radius; // s
+
+        private SeriesApprox(int skip, double[] dr, double[] di, int exponent, FloatExp radius){
+            this.skip = skip; this.dr = dr; this.di = di; this.exponent = exponent; this.radius = radius;
+        }
+
+        // for the orbit Z_0 .. Z_{length-1}, taken at (refX, refY) pixels from the center of a
+        // width x height frame of the given pixel size; null if not even one iteration can be skipped
+        static SeriesApprox build(double[] zr, double[] zi, int length, int maxIter, boolean julia,
+                                  FloatExp pixel, double refX, double refY, int width, int height){
+            // the corners' u, and s: the distance to the farthest one
+            final double[] ur = new double[4], ui = new double[4];
+            double far = 0;
+            for(int c = 0; c < 4; c++){
+                ur[c] = ((c & 1) == 0 ? -width/2.0 : width/2.0) - refX;
+                ui[c] = (c < 2 ? -height/2.0 : height/2.0) - refY;
+                far = Math.max(far, Math.hypot(ur[c], ui[c]));
+            }
+            final FloatExp radius = pixel.mul(far);
+            if(radius.mantissa == 0) return null;
+            for(int c = 0; c < 4; c++){
+                ur[c] /= far; ui[c] /= far;
+            }
+            double[] cr = new double[TERMS], ci = new double[TERMS];
+            double[] nr = new double[TERMS], ni = new double[TERMS];
+            int e = radius.exponent;
+            cr[0] = radius.mantissa; // d_0 = x, so A_1,0 = 1 and D_1,0 = s
+            // the corners' deltas, in units of 2^e
+            final double[] pr = new double[4], pi = new double[4];
+            for(int c = 0; c < 4; c++){
+                pr[c] = radius.mantissa * ur[c]; pi[c] = radius.mantissa * ui[c];
+            }
+
+            SeriesApprox best = null;
+            for(int n = 0; n + 2 < length && n < maxIter; n++){
+                final double tr = 2 * zr[n], ti = 2 * zi[n];
+                final double dc = julia ? 0 : Math.scalb(radius.mantissa, radius.exponent - e); // s, in units of 2^e
+                for(int k = 0; k < TERMS; k++){
+                    // the convolution for A_{k+1}: indices i + j = k - 1
+                    double sr = 0, si = 0;
+                    for(int a = 0, b = k - 1; a < b; a++, b--){
+                        sr += 2 * (cr[a]*cr[b] - ci[a]*ci[b]);
+                        si += 2 * (cr[a]*ci[b] + ci[a]*cr[b]);
+                    }
+                    if((k & 1) == 1){
+                        final int h = (k - 1) / 2;
+                        sr += cr[h]*cr[h] - ci[h]*ci[h];
+                        si += 2 * cr[h]*ci[h];
+                    }
+                    nr[k] = tr*cr[k] - ti*ci[k] + Math.scalb(sr, e) + (k == 0 ? dc : 0);
+                    ni[k] = tr*ci[k] + ti*cr[k] + Math.scalb(si, e);
+                }
+                double[] t = cr; cr = nr; nr = t;
+                t = ci; ci = ni; ni = t;
+                for(int c = 0; c < 4; c++){
+                    final double x = pr[c], y = pi[c];
+                    pr[c] = tr*x - ti*y + Math.scalb(x*x - y*y, e) + dc * ur[c];
+                    pi[c] = tr*y + ti*x + Math.scalb(2*x*y, e) + dc * ui[c];
+                }
+                // one shared exponent again, the largest value back near 1
+                double max = 0;
+                for(int k = 0; k < TERMS; k++) max = Math.max(max, Math.max(Math.abs(cr[k]), Math.abs(ci[k])));
+                for(int c = 0; c < 4; c++) max = Math.max(max, Math.max(Math.abs(pr[c]), Math.abs(pi[c])));
+                if(max == 0 || Double.isNaN(max) || Double.isInfinite(max)) break;
+                final int s = Math.getExponent(max);
+                for(int k = 0; k < TERMS; k++){
+                    cr[k] = Math.scalb(cr[k], -s); ci[k] = Math.scalb(ci[k], -s);
+                }
+                for(int c = 0; c < 4; c++){
+                    pr[c] = Math.scalb(pr[c], -s); pi[c] = Math.scalb(pi[c], -s);
+                }
+                e += s;
+
+                // iteration n + 1: the series has to match every corner, and the frame, spanned by
+                // the corners' deltas, has to stay inside the bailout
+                boolean valid = true;
+                double reach = 0;
+                for(int c = 0; c < 4 && valid; c++){
+                    double sr = 0, si = 0;
+                    for(int k = TERMS - 1; k >= 0; k--){
+                        final double x = sr*ur[c] - si*ui[c] + cr[k];
+                        si = sr*ui[c] + si*ur[c] + ci[k];
+                        sr = x;
+                    }
+                    final double x = sr*ur[c] - si*ui[c];
+                    si = sr*ui[c] + si*ur[c];
+                    sr = x;
+                    final double p = Math.hypot(pr[c], pi[c]);
+                    valid = Math.hypot(sr - pr[c], si - pi[c]) <= TOLERANCE * p;
+                    reach = Math.max(reach, p);
+                }
+                if(!valid || Math.hypot(zr[n+1], zi[n+1]) + Math.scalb(reach, e) > 2.0) break;
+                best = new SeriesApprox(n + 1, cr.clone(), ci.clone(), e, radius);
+            }
+            return best;
+        }
+    }
+
+    /*
+    * Bilinear approximation (BLA) table over a reference orbit. While a pixel's delta d is small
+    * against the orbit, the delta 'l' iterations later is A*d + B*dc to within double rounding,
+    * with A and B depending only on the reference, so a pixel can jump over the whole run at
+    * once. Level j holds (A, B) for the runs of 2^j iterations starting at multiples of 2^j,
+    * each with a validity radius r: the run may be taken while |d| < r.
+    *   one step from n:  A = 2 Z_n, B = 1 (0 for Julia), r = EPSILON |A|, so the dropped d^2
+    *                     stays below EPSILON of A*d
+    *   run x then run y: A = Ay Ax, B = Ay Bx + By, r = min(rx, max(0, (ry - |Bx| dcMax) / |Ax|))
+    * where dcMax is the largest |dc| in the frame. Level 0 is never jumped through (a step is as
+    * cheap); it only seeds the merges. -Dfractal.bla=false steps every iteration.
+    */
+    static final class BlaTable {
+        static final double EPSILON = 0x1p-53;
+
+        final int levels;
+        final double[][] ar, ai, br, bi, r2; // per level; r2 is the squared validity radius
+
+        private BlaTable(int levels){
+            this.levels = levels;
+            ar = new double[levels][]; ai = new double[levels][];
+            br = new double[levels][]; bi = new double[levels][];
+            r2 = new double[levels][];
+        }
+
+        // table for the first length-1 steps of the orbit Z_0 .. Z_{length-1}; null if too short to help
+        static BlaTable build(double[] zr, double[] zi, int length, boolean julia, double dcMax){
+            final int steps = length - 1;
+            if(steps < 2) return null;
+            final BlaTable t = new BlaTable(32 - Integer.numberOfLeadingZeros(steps)); // levels j with 2^j <= steps
+            double[] r = new double[steps];
+            t.alloc(0, steps);
+            for(int n = 0; n < steps; n++){
+                t.ar[0][n] = 2 * zr[n];
+                t.ai[0][n] = 2 * zi[n];
+                t.br[0][n] = julia ? 0 : 1;
+                r[n] = EPSILON * Math.hypot(t.ar[0][n], t.ai[0][n]);
+            }
+            for(int n = 0; n < steps; n++) t.r2[0][n] = r[n] * r[n];
+            for(int j = 1; j < t.levels; j++){
+                final int count = steps >> j;
+                t.alloc(j, count);
+                final double[] next = new double[count];
+                final double[] xar = t.ar[j-1], xai = t.ai[j-1], xbr = t.br[j-1], xbi = t.bi[j-1];
+                for(int k = 0; k < count; k++){
+                    final int x = 2 * k, y = x + 1; // run x, then run y
+                    t.ar[j][k] = xar[y]*xar[x] - xai[y]*xai[x];
+                    t.ai[j][k] = xar[y]*xai[x] + xai[y]*xar[x];
+                    t.br[j][k] = xar[y]*xbr[x] - xai[y]*xbi[x] + xbr[y];
+                    t.bi[j][k] = xar[y]*xbi[x] + xai[y]*xbr[x] + xbi[y];
+                    final double ax = Math.hypot(xar[x], xai[x]), bx = Math.hypot(xbr[x], xbi[x]);
+                    final double ry = Math.max(0, (r[y] - bx * dcMax) / ax);
+                    next[k] = Math.min(r[x], ry); // NaN when the products overflow; never valid then
+                    t.r2[j][k] = next[k] * next[k];
+                }
+                r = next;
+            }
+            return t;
+        }
+
+        private void alloc(int j, int count){
+            ar[j] = new double[count]; ai[j] = new double[count];
+            br[j] = new double[count]; bi[j] = new double[count];
+            r2[j] = new double[count];
+        }
+
+        // the highest level whose run starts at iteration n, ends by maxIter and is valid for a
+        // delta of squared magnitude d2; -1 if none above level 0 is
+        int level(int n, double d2, int maxIter){
+            for(int j = Math.min(Integer.numberOfTrailingZeros(n), levels - 1); j > 0; j--){
+                final int k = n >> j;
+                if(k < r2[j].length && n + (1 << j) <= maxIter && d2 < r2[j][k]) return j;
+            }
+            return -1;
+        }
+    }
+
+    /*
+    * Double-double escape loop for views between DEEP_SCALE and PERTURBATION_SCALE when
+    * -Dfractal.doubleDouble=true opens that tier; by default perturbation covers it, being
+    * cheaper once the BLA table and series approximation skip most iterations. Every value is the
+    * unevaluated sum hi + lo of two doubles, about 106 bits, kept exact by error-free transforms:
+    * TwoSum recovers the rounding error of a sum and Math.fma that of a product. Each pixel
+    * iterates on its own, so there is no reference orbit to compute and no pixel can be
+    * misplaced by one, at several times the cost of a double iteration. Same contract as
+    * Kernel.escapeRow, with pixel offsets dre/dim from the center (cxHi + cxLo, cyHi + cyLo);
+    * the cycle test and bailout look at the hi parts' distance and the counts match the kernels'.
+    */
+    static final class DoubleDouble {
+        private DoubleDouble(){}
+
+        static long escapeRow(double cxHi, double cxLo, double cyHi, double cyLo, double[] dre, double dim, int n,
+                              int maxIter, boolean julia, double jc, double ji, double cycleEps,
+                              int[] iters, double[] mag2){
+            long executed = 0;
+            // the row's imaginary coordinate: TwoSum of the center and the offset, then renormalize
+            double s = cyHi + dim, b = s - cyHi;
+            double e = (cyHi - (s - b)) + (dim - b) + cyLo;
+            final double pyHi = s + e, pyLo = e - ((s + e) - s);
+            for(int i = 0; i < n; i++){
+                s = cxHi + dre[i]; b = s - cxHi;
+                e = (cxHi - (s - b)) + (dre[i] - b) + cxLo;
+                final double pxHi = s + e, pxLo = e - ((s + e) - s);
+
+                double xh = pxHi, xl = pxLo, yh = pyHi, yl = pyLo;
+                final double crh = julia ? jc : pxHi, crl = julia ? 0 : pxLo;
+                final double cih = julia ? ji : pyHi, cil = julia ? 0 : pyLo;
+
+                int iter = 0;
+                double x2h = xh*xh, y2h = yh*yh;
+                double sxh = xh, sxl = xl, syh = yh, syl = yl; // Brent, as in the kernels
+                int lam = 0, power = 1;
+                boolean cycle = false;
+                while(iter < maxIter && x2h + y2h <= 4.0){
+                    // x^2, y^2 and x*y, each as hi + lo
+                    double p = x2h, q = Math.fma(xh, xh, -p) + 2*xh*xl;
+                    final double x2 = p + q, x2l = q - (x2 - p);
+                    p = y2h; q = Math.fma(yh, yh, -p) + 2*yh*yl;
+                    final double y2 = p + q, y2l = q - (y2 - p);
+                    p = xh*yh; q = Math.fma(xh, yh, -p) + xh*yl + xl*yh;
+                    final double xy = p + q, xyl = q - (xy - p);
+
+                    // y = 2xy + ci
+                    s = 2*xy + cih; b = s - 2*xy;
+                    e = (2*xy - (s - b)) + (cih - b) + 2*xyl + cil;
+                    yh = s + e; yl = e - (yh - s);
+                    // x = x^2 - y^2 + cr
+                    s = x2 - y2; b = s - x2;
+                    e = (x2 - (s - b)) + (-y2 - b) + x2l - y2l;
+                    final double dh = s + e, dl = e - (dh - s);
+                    s = dh + crh; b = s - dh;
+                    e = (dh - (s - b)) + (crh - b) + dl + crl;
+                    xh = s + e; xl = e - (xh - s);
+
+                    x2h = xh*xh; y2h = yh*yh;
+                    iter++;
+                    if(Math.abs((xh - sxh) + (xl - sxl)) < cycleEps && Math.abs((yh - syh) + (yl - syl)) < cycleEps){
+                        cycle = true;
+                        break;
+                    }
+                    if(++lam == power){
+                        sxh = xh; sxl = xl; syh = yh; syl = yl;
+                        power <<= 1; lam = 0;
+                    }
+                }
+                executed += iter;
+                iters[i] = cycle ? maxIter : iter;
+                mag2[i] = x2h + y2h;
+            }
+            return executed;
+        }
+    }
+
+    /*
+    * Escape-time kernels. Each one iterates a row segment: pixel i starts at (re[i], im),
+    * and on return iters[i] holds the iteration count and mag2[i] the final |z|^2.
+    * All kernels perform the exact same floating point operations per pixel, so their
+    * iteration counts are bit-identical; they only differ in how pixels are scheduled.
+    *
+    * Interior points settle into an attracting cycle. Brent's method keeps a saved z that is
+    * refreshed at power-of-two intervals; when z comes back within cycleEps of it the orbit is
+    * periodic and the pixel is reported inside (iters = maxIter) right away. cycleEps = 0 disables it.
+    * The return value is the number of iterations actually executed.
+    */
+    enum Kernel {
+        // one pixel at a time, the original loop
+        SCALAR {
+            @Override
+            long escapeRow(double[] re, double im, int n, int maxIter, boolean julia, double jc, double ji,
+                           double cycleEps, int[] iters, double[] mag2){
+                long executed = 0;
+                for(int i = 0; i < n; i++){
+                    double zx = re[i], zy = im;
+                    double cx = julia ? jc : re[i];
+                    double cy = julia ? ji : im;
+
+                    int iter = 0;
+                    double zx2 = zx*zx, zy2 = zy*zy;
+                    double sx = zx, sy = zy; // Brent: saved point, replaced every time lam reaches power
+                    int lam = 0, power = 1;
+                    boolean cycle = false;
+                    // iterate
+                    while(iter < maxIter && zx2 + zy2 <= 4.0){
+                        zy = 2*zx*zy + cy;
+                        zx = zx2 - zy2 + cx;
+                        zx2 = zx*zx; zy2 = zy*zy;
+                        iter++;
+                        if(Math.abs(zx - sx) < cycleEps && Math.abs(zy - sy) < cycleEps){
+                            cycle = true;
+                            break;
+                        }
+                        if(++lam == power){
+                            sx = zx; sy = zy;
+                            power <<= 1; lam = 0;
+                        }
+                    }
+                    executed += iter;
+                    iters[i] = cycle ? maxIter : iter;
+                    mag2[i] = zx2 + zy2;
+                }
+                return executed;
+            }
+        },
+
+        // one SIMD register of pixels per step through the Vector API, see VectorKernel.java; only
+        // there when that class is compiled and jdk.incubator.vector is added to the run
+        VECTOR {
+            @Override
+            long escapeRow(double[] re, double im, int n, int maxIter, boolean julia, double jc, double ji,
+                           double cycleEps, int[] iters, double[] mag2){
+                return VectorHolder.ESCAPER.escapeRow(re, im, n, maxIter, julia, jc, ji, cycleEps, iters, mag2);
+            }
+
+            @Override
+            boolean available(){
+                return VectorHolder.ESCAPER != null;
+            }
+        };
+
+        abstract long escapeRow(double[] re, double im, int n, int maxIter, boolean julia, double jc, double ji,
+                                double cycleEps, int[] iters, double[] mag2);
+
+        boolean available(){
+            return true;
+        }
+
+        // the kernels this run can use, for the benchmarks
+        static List<Kernel> usable(){
+            List<Kernel> out = new ArrayList<>();
+            for(Kernel k : values()) if(k.available()) out.add(k);
+            return out;
+        }
+
+        // -Dfractal.kernel=scalar|vector, defaults to the scalar kernel
+        static Kernel fromProperty(){
+            String k = System.getProperty("fractal.kernel", "scalar");
+            Kernel kernel;
+            try {
+                kernel = Kernel.valueOf(k.trim().toUpperCase());
+            } catch(IllegalArgumentException e){
+                System.err.println("Unknown kernel '" + k + "', using scalar");
+                return SCALAR;
+            }
+            if(!kernel.available()){
+                System.err.println("Kernel '" + k + "' needs VectorKernel.class and --add-modules jdk.incubator.vector, using scalar");
+                return SCALAR;
+            }
+            return kernel;
+        }
+    }
+
+    // same contract as Kernel.escapeRow, implemented outside this file by VectorKernel
+    interface RowEscaper {
+        long escapeRow(double[] re, double im, int n, int maxIter, boolean julia, double jc, double ji,
+                       double cycleEps, int[] iters, double[] mag2);
+    }
+
+    // loads VectorKernel on first use; null when the class or the incubator module is missing
+    static final class VectorHolder {
+        static final RowEscaper ESCAPER = load();
+
+        private static RowEscaper load(){
+            try {
+                return (RowEscaper)Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+            } catch(ReflectiveOperationException | LinkageError e){
+                return null;
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g){
+        super.paintComponent(g);
+        // the image has one pixel per device pixel; drawn at the canvas size it maps 1:1 on HiDPI
+        // screens, and while a resize is being rendered the previous frame is stretched to fit
+        g.drawImage(frame.image, 0, 0, canvasWidth(), canvasHeight(), null);
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setColor(new Color(255,255,255,200));
+        g2.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+    String mode = useJulia ? "Julia" : "Mandelbrot";
+    String coords = useJulia
+        ? String.format("c=%.6f%+.6fi", juliaCr, juliaCi)
+        : String.format("cx=%.6f cy=%.6f", centerX, centerY);
+    String info = String.format("%s  %s  scale=%s  iter=%d  palette=%s", mode, coords, scale, maxIter,
+        palettes.get(paletteIndex).name);
+        g2.drawString(info, 8, 18);
+        g2.drawString(String.format("queue %d (peak %d)  purged %d last, %d total  input to pixel %.0f ms", pool.depth(),
+                pool.peakDepth.get(), pool.lastPurged, pool.purged.get(), lastInputLatencyMs), 8, 50);
+        g2.drawString(String.format("kernel=%s  %.1f Mpix/s  interior skipped %.1f%%  filled %.1f%%  reused %.1f%%  first pixel %.0f ms",
+                lastReferences > 0 ? lastEngine + " (" + lastReferences + " refs)" : lastEngine, lastMpixPerSec, 100 * lastInteriorSkipped,
+                100 * lastFilled, 100 * lastReused, lastFirstPixelMs), 8, 34);
+        g2.drawString(telemetry.summary(), 8, 66);
+        g2.drawString("Mouse-wheel: zoom  |  Arrows: pan  |  +/- iter  |  M/J: mode  |  P: palette  |  C: cycle colors  |  Click to set Julia c  |  Space: reset", 8, canvasHeight()-8);
+        g2.dispose();
+    }
+
+    // Kernel benchmark: times every kernel on reference views, with and without periodicity
+    // detection, and checks the kernels agree with each other
+    static void bench(){
+        // name, centerX, centerY, scale, julia, jc, ji
+        Object[][] views = {
+            {"default", -0.5, 0.0, 3.0, false, 0.0, 0.0},
+            {"minibrot (dense interior)", -1.7549, 0.0, 0.05, false, 0.0, 0.0},
+            {"rabbit julia (dense interior)", 0.0, 0.0, 3.0, true, -0.122561, 0.744862},
+        };
+        final int iters = 2000, rounds = 5;
+        final double aspect = (double)H / W;
+        for(Object[] v : views){
+            final double cX = (Double)v[1], cY = (Double)v[2], sc = (Double)v[3];
+            final boolean julia = (Boolean)v[4];
+            final double jc = (Double)v[5], ji = (Double)v[6];
+            final double[] re = new double[W];
+            for(int px = 0; px < W; px++) re[px] = cX + ((px - W/2.0) * (sc / W));
+            System.out.printf("%s, maxIter=%d%n", v[0], iters);
+
+            int[][] reference = null;
+            for(double eps : new double[]{0, sc / W * 1e-3}){
+                int[][] first = null;
+                for(Kernel k : Kernel.usable()){
+                    int[][] counts = new int[H][W];
+                    double[] mag2 = new double[W];
+                    long best = Long.MAX_VALUE, executed = 0;
+                    for(int r = 0; r < rounds; r++){ // first rounds double as JIT warm-up
+                        long t = System.nanoTime();
+                        executed = 0;
+                        for(int py = 0; py < H; py++){
+                            double im = cY + ((py - H/2.0) * (sc * aspect / H));
+                            executed += k.escapeRow(re, im, W, iters, julia, jc, ji, eps, counts[py], mag2);
+                        }
+                        best = Math.min(best, System.nanoTime() - t);
+                    }
+                    if(reference == null) reference = counts;
+                    boolean same = first == null || java.util.Arrays.deepEquals(first, counts);
+                    if(first == null) first = counts;
+                    int changed = 0;
+                    for(int py = 0; py < H; py++)
+                        for(int px = 0; px < W; px++)
+                            if(counts[py][px] != reference[py][px]) changed++;
+                    System.out.printf("  %-8s cycles=%-3s %8.1f Mpix/s  %,14d iterations  %s  %d px differ from no-cycles%n",
+                            k.name().toLowerCase(), eps > 0 ? "on" : "off", (double)W * H / (best / 1e3), executed,
+                            same ? "identical across kernels" : "KERNELS DIFFER", changed);
+                }
+            }
+
+            // subdivision engine against a full render of the same view
+            View view = new View(cX, cY, new BigDecimal(cX), new BigDecimal(cY), sc, iters, julia, jc, ji);
+            ColorTable colors = new ColorTable(new Palette("hue", null), iters);
+            int[] full = new int[W * H];
+            int[] row = new int[W];
+            double[] mag2 = new double[W];
+            BufferedImage img = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = pixels(img);
+            long t, fullNanos = Long.MAX_VALUE;
+            for(int r = 0; r < rounds; r++){
+                t = System.nanoTime();
+                for(int py = 0; py < H; py++){
+                    escapeSpan(Kernel.SCALAR, view, py, 0, 1, W, row, mag2);
+                    System.arraycopy(row, 0, full, py * W, W);
+                    for(int px = 0; px < W; px++){
+                        pixels[py * W + px] = row[px] >= iters ? 0 : colors.color(smoothIter(row[px], mag2[px]), 0);
+                    }
+                }
+                fullNanos = Math.min(fullNanos, System.nanoTime() - t);
+            }
+            Subdivider sd = null;
+            long sdNanos = Long.MAX_VALUE;
+            for(int r = 0; r < rounds; r++){
+                IterFrame f = new IterFrame(view);
+                sd = new Subdivider(Kernel.SCALAR, f, Runnable::run, () -> false);
+                t = System.nanoTime();
+                sd.start();
+                f.colorize(0, W, 0, H, colors, 0);
+                sdNanos = Math.min(sdNanos, System.nanoTime() - t);
+            }
+            int differ = 0;
+            for(int i = 0; i < W * H; i++) if(sd.iters[i] != full[i]) differ++;
+            System.out.printf("  subdivide: %.1f%% filled, %.1f ms vs %.1f ms full render, %d px differ from full render%n",
+                    100.0 * sd.filled.get() / (W * H), sdNanos / 1e6, fullNanos / 1e6, differ);
+        }
+    }
+
+    // Write path microbenchmark: BufferedImage.setRGB per pixel against the backing int[]
+    static void benchWrites(){
+        final int rounds = 50;
+        BufferedImage img = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+        int[] rgb = new int[W * H];
+        java.util.Random rnd = new java.util.Random(1);
+        for(int i = 0; i < rgb.length; i++) rgb[i] = rnd.nextInt() & 0xFFFFFF;
+
+        long best = Long.MAX_VALUE;
+        for(int r = 0; r < rounds; r++){
+            long t = System.nanoTime();
+            for(int y = 0; y < H; y++)
+                for(int x = 0; x < W; x++)
+                    img.setRGB(x, y, rgb[y * W + x]);
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        System.out.printf("write setRGB   %6.2f ns/pixel%n", (double)best / (W * H));
+
+        best = Long.MAX_VALUE;
+        for(int r = 0; r < rounds; r++){
+            long t = System.nanoTime();
+            int[] pixels = pixels(img);
+            for(int y = 0; y < H; y++)
+                for(int x = 0; x < W; x++)
+                    pixels[y * W + x] = rgb[y * W + x];
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        System.out.printf("write int[]    %6.2f ns/pixel%n", (double)best / (W * H));
+
+        // recoloring a frame from its smooth iteration counts, as a palette change does
+        IterFrame f = new IterFrame(null);
+        for(int i = 0; i < f.nu.length; i++) f.nu[i] = (i % 7 == 0) ? IterFrame.INSIDE : rnd.nextFloat() * 400;
+        ColorTable colors = new ColorTable(new Palette("hue", null), 400);
+        best = Long.MAX_VALUE;
+        for(int r = 0; r < rounds; r++){
+            long t = System.nanoTime();
+            f.colorize(0, W, 0, H, colors, r);
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        System.out.printf("recolor frame  %6.2f ns/pixel (%.2f ms per frame, one thread)%n",
+                (double)best / (W * H), best / 1e6);
+    }
+
+    /*
+    * Benchmark matrix: reference views x maxIter values, timing the escape pass once per kernel
+    * and once with the double-double loop (as if the view were deep; it has no interior test),
+    * and the color-writing pass once per write path. Measured the way JMH would (untimed
+    * warm-up for at least half a second, then timed runs reported as mean +- standard
+    * deviation) but in-process, since
+    * the renderer lives in the default package of a single file with no build to hang a JMH
+    * module on. Frames are WxH/4 to keep the whole matrix to a few minutes.
+    */
+    static void benchMatrix(){
+        // name, centerX, centerY, scale, julia, jc, ji
+        Object[][] views = {
+            {"default", -0.5, 0.0, 3.0, false, 0.0, 0.0},
+            {"seahorse valley", -0.7453, 0.1127, 0.01, false, 0.0, 0.0},
+            {"dense julia", 0.0, 0.0, 3.0, true, -0.122561, 0.744862},
+            {"deep interior", -1.7549, 0.0, 0.05, false, 0.0, 0.0},
+        };
+        final int[] maxIters = {500, 2000, 8000};
+        final int w = W / 2, h = H / 2, warmup = 2, runs = 5;
+        final double pixels = (double)w * h;
+        final ColorTable colors = new ColorTable(new Palette("hue", null), 2000);
+        System.out.printf("benchmark matrix: %dx%d frame, >= %d warm-up + %d timed runs, 1 thread%n", w, h, warmup, runs);
+        System.out.printf("%-16s %7s  %-14s %10s %10s %9s%n", "view", "maxIter", "pass", "ns/pixel", "+-", "Mpix/s");
+        for(Object[] v : views){
+            final double cX = (Double)v[1], cY = (Double)v[2], sc = (Double)v[3];
+            for(int maxIter : maxIters){
+                final View view = new View(cX, cY, new BigDecimal(cX), new BigDecimal(cY), sc, w, h,
+                        maxIter, (Boolean)v[4], (Double)v[5], (Double)v[6]);
+                final IterFrame f = new IterFrame(view);
+                final int[] iters = new int[w];
+                final double[] mag2 = new double[w];
+                for(Kernel k : Kernel.usable()){
+                    Measurement m = Measurement.of(() -> {
+                        for(int py = 0; py < h; py++){
+                            escapeSpan(k, view, py, 0, 1, w, iters, mag2);
+                            for(int px = 0; px < w; px++){
+                                f.nu[py * w + px] = iters[px] >= maxIter ? IterFrame.INSIDE : (float)smoothIter(iters[px], mag2[px]);
+                            }
+                        }
+                    }, warmup, runs);
+                    m.print(v[0] + "", maxIter, "escape " + k.name().toLowerCase(), pixels);
+                }
+                // the double-double loop on the same pixels, for its cost against the double kernels
+                final double pixel = sc / w;
+                final double[] re = new double[w];
+                for(int px = 0; px < w; px++) re[px] = (px - w/2.0) * pixel;
+                Measurement.of(() -> {
+                    for(int py = 0; py < h; py++){
+                        DoubleDouble.escapeRow(view.centerXHi, view.centerXLo, view.centerYHi, view.centerYLo, re,
+                                (py - h/2.0) * pixel, w, maxIter, view.julia, view.jc, view.ji, cycleTolerance(pixel), iters, mag2);
+                    }
+                }, warmup, runs).print(v[0] + "", maxIter, "escape dd", pixels);
+                // the counts of the last kernel feed the write paths
+                final BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                Measurement.of(() -> {
+                    for(int py = 0; py < h; py++){
+                        for(int px = 0; px < w; px++){
+                            float nu = f.nu[py * w + px];
+                            img.setRGB(px, py, nu == IterFrame.INSIDE ? 0 : colors.color(nu, 0));
+                        }
+                    }
+                }, warmup, runs).print(v[0] + "", maxIter, "write setRGB", pixels);
+                Measurement.of(() -> f.colorize(0, w, 0, h, colors, 0), warmup, runs)
+                        .print(v[0] + "", maxIter, "write int[]", pixels);
+            }
+        }
+    }
+
+    /*
+    * Perturbation shortcut check: renders deep reference views (Misiurewicz points such as c = i
+    * keep their structure at any depth) through the perturbation engine twice, once starting
+    * after the series approximation and jumping through the BLA table, once stepping every
+    * iteration from 0, and compares the iteration counts pixel by pixel, except where stepping
+    * flags a glitch (those are left to the glitch check below). A count may move by one
+    * where an escape lands right at the bailout; the check fails (exit status 1) when more than
+    * 0.1% of the pixels differ by more than that, or when none of them escapes, the comparison
+    * then being between maxIter and maxIter. -Dfractal.series=false or -Dfractal.bla=false
+    * checks one shortcut alone.
+    * Then views with a minibrot off-center, where the center's reference glitches, are rendered
+    * with that reference alone and with rebasing (View.escapeDeep), and a grid of sampled pixels
+    * is checked against plain BigDecimal iteration; rebasing may get at most 0.1% of them wrong.
+    */
+    static void checkPerturbation(){
+        // name, center re, center im, scale, maxIter, julia, jc, ji
+        Object[][] views = {
+            // the Misiurewicz point in seahorse valley where z_26 = z_24: every pixel escapes, after
+            // a couple of thousand iterations
+            {"seahorse 1e-30", "-0.77568376800905379746948350393474104572824650461580",
+                    "0.13646736829469012473327440961784876519777211159247", "1e-30", 5000, false, 0.0, 0.0},
+            {"tip -2 1e-50", "-2", "0", "1e-50", 5000, false, 0.0, 0.0},
+            {"c=i 1e-100", "0", "1", "1e-100", 5000, false, 0.0, 0.0},
+            {"c=i 1e-400", "0", "1", "1e-400", 5000, false, 0.0, 0.0},
+            {"julia c=i 1e-30", "0", "1", "1e-30", 5000, true, 0.0, 1.0},
+        };
+        final int w = W / 4, h = H / 4;
+        boolean failed = false;
+        System.out.printf("Perturbation check: %dx%d frames, series%s and BLA%s vs step by step%n", w, h,
+                SERIES ? "" : " (off)", BLA ? "" : " (off)");
+        for(Object[] v : views){
+            final BigDecimal cx = new BigDecimal((String)v[1]), cy = new BigDecimal((String)v[2]);
+            final View view = new View(cx.doubleValue(), cy.doubleValue(), cx, cy, FloatExp.parse((String)v[3]), w, h,
+                    (Integer)v[4], (Boolean)v[5], (Double)v[6], (Double)v[7]);
+            final ReferenceOrbit fast = view.orbit(), stepped = fast.stepped();
+            final int exp = view.extended() ? view.pixel.exponent : 0;
+            final double pixel = exp != 0 ? view.pixel.mantissa : view.pixel.toDouble();
+            final double[] re = new double[w], mag2 = new double[w];
+            for(int x = 0; x < w; x++) re[x] = (x - w/2.0) * pixel;
+            final int[] a = new int[w], b = new int[w];
+            final boolean[] glitched = new boolean[w];
+            long stepsFast = 0, steps = 0, nanosFast = 0, nanos = 0;
+            int same = 0, offByOne = 0, worse = 0, maxDiff = 0, escaped = 0, skipped = 0;
+            for(int y = 0; y < h; y++){
+                final double im = (y - h/2.0) * pixel;
+                long t = System.nanoTime();
+                stepsFast += fast.escapeRow(re, im, exp, w, view.maxIter, a, mag2, null);
+                nanosFast += System.nanoTime() - t;
+                t = System.nanoTime();
+                java.util.Arrays.fill(glitched, false);
+                steps += stepped.escapeRow(re, im, exp, w, view.maxIter, b, mag2, glitched);
+                nanos += System.nanoTime() - t;
+                for(int x = 0; x < w; x++){
+                    if(glitched[x]){
+                        skipped++; // the center's reference cannot give this one, with or without shortcuts
+                        continue;
+                    }
+                    final int d = Math.abs(a[x] - b[x]);
+                    if(d == 0) same++; else if(d == 1) offByOne++; else worse++;
+                    maxDiff = Math.max(maxDiff, d);
+                    if(b[x] < view.maxIter) escaped++;
+                }
+            }
+            // a view that is all inside compares maxIter with maxIter and tests nothing
+            final boolean ok = worse <= (w * h - skipped) / 1000 && escaped > 0;
+            failed |= !ok;
+            System.out.printf("%-16s %s  %d escaped, %d glitched  %d same, %d off by one, %d worse (max %d)  series skip %d  steps %,d vs %,d (%.1fx)  %.0f vs %.0f ms%n",
+                    v[0], ok ? "ok  " : "FAIL", escaped, skipped, same, offByOne, worse, maxDiff, fast.series == null ? 0 : fast.series.skip,
+                    stepsFast, steps, (double)steps / Math.max(1, stepsFast), nanosFast / 1e6, nanos / 1e6);
+        }
+
+        // name, center re, center im, scale, maxIter: the period-49 minibrot next to c = i, off-center
+        Object[][] glitchy = {
+            {"mini 49 1e-34", "0.00000000000000000038975172806496953471956137081288133010324171",
+                    "0.99999999999999999883389374143284294788720972737904158413422181", "1e-34", 3000},
+            {"mini 49 1e-35", "0.00000000000000000038975172806496950771956137081288133010324171",
+                    "0.99999999999999999883389374143284294788720972737904158413422181", "1e-35", 3000},
+        };
+        final int every = 5;
+        System.out.printf("Glitch check: %dx%d frames, every %dth pixel against BigDecimal, references up to %d%n",
+                w, h, every, REFERENCES);
+        for(Object[] v : glitchy){
+            final BigDecimal cx = new BigDecimal((String)v[1]), cy = new BigDecimal((String)v[2]);
+            final View view = new View(cx.doubleValue(), cy.doubleValue(), cx, cy, FloatExp.parse((String)v[3]), w, h,
+                    (Integer)v[4], false, 0, 0);
+            final int exp = view.extended() ? view.pixel.exponent : 0;
+            final double pixel = exp != 0 ? view.pixel.mantissa : view.pixel.toDouble();
+            final double[] re = new double[w], mag2 = new double[w];
+            for(int x = 0; x < w; x++) re[x] = (x - w/2.0) * pixel;
+            final int[] single = new int[w], rebased = new int[w];
+            final MathContext mc = precisionFor(view.scale);
+            final BigDecimal px = view.pixel.toBigDecimal(), two = BigDecimal.valueOf(2);
+            int sampled = 0, wrongSingle = 0, wrongRebased = 0;
+            long nanosSingle = 0, nanosRebased = 0;
+            for(int y = 0; y < h; y++){
+                final double im = (y - h/2.0) * pixel;
+                long t = System.nanoTime();
+                view.orbit().escapeRow(re, im, exp, w, view.maxIter, single, mag2, null);
+                nanosSingle += System.nanoTime() - t;
+                t = System.nanoTime();
+                view.escapeDeep(re, im, exp, w, rebased, mag2);
+                nanosRebased += System.nanoTime() - t;
+                if(y % every != every / 2) continue;
+                for(int x = every / 2; x < w; x += every){
+                    final BigDecimal cr = cx.add(px.multiply(new BigDecimal(x - w/2.0)), mc);
+                    final BigDecimal ci = cy.add(px.multiply(new BigDecimal(y - h/2.0)), mc);
+                    BigDecimal zr = cr, zi = ci;
+                    int n = 0;
+                    while(n < view.maxIter){
+                        final double dr = zr.doubleValue(), di = zi.doubleValue();
+                        if(dr*dr + di*di > 4.0) break;
+                        final BigDecimal nr = zr.multiply(zr, mc).subtract(zi.multiply(zi, mc), mc).add(cr, mc);
+                        zi = two.multiply(zr, mc).multiply(zi, mc).add(ci, mc);
+                        zr = nr;
+                        n++;
+                    }
+                    sampled++;
+                    if(Math.abs(single[x] - n) > 1) wrongSingle++;
+                    if(Math.abs(rebased[x] - n) > 1) wrongRebased++;
+                }
+            }
+            final boolean ok = wrongRebased <= sampled / 1000;
+            failed |= !ok;
+            System.out.printf("%-16s %s  %d sampled: center's reference alone %d wrong, rebased %d wrong  references %d  %.0f vs %.0f ms%n",
+                    v[0], ok ? "ok  " : "FAIL", sampled, wrongSingle, wrongRebased, view.references(),
+                    nanosSingle / 1e6, nanosRebased / 1e6);
+        }
+        if(failed) System.exit(1);
+    }
+
+    // timings of one benchmarked operation: mean and standard deviation over the timed runs
+    static final class Measurement {
+        final double meanNanos, sdNanos;
+
+        private Measurement(double meanNanos, double sdNanos){
+            this.meanNanos = meanNanos; this.sdNanos = sdNanos;
+        }
+
+        static final long WARMUP_NANOS = 500_000_000L;
+
+        static Measurement of(Runnable op, int warmup, int runs){
+            final long start = System.nanoTime();
+            for(int i = 0; i < warmup || System.nanoTime() - start < WARMUP_NANOS; i++) op.run();
+            double sum = 0, sum2 = 0;
+            for(int i = 0; i < runs; i++){
+                long t = System.nanoTime();
+                op.run();
+                double d = System.nanoTime() - t;
+                sum += d;
+                sum2 += d * d;
+            }
+            double mean = sum / runs;
+            return new Measurement(mean, Math.sqrt(Math.max(0, sum2 / runs - mean * mean)));
+        }
+
+        void print(String view, int maxIter, String pass, double pixels){
+            System.out.printf("%-16s %7d  %-14s %10.2f %10.2f %9.1f%n", view, maxIter, pass,
+                    meanNanos / pixels, sdNanos / pixels, pixels / (meanNanos / 1e3));
+        }
+    }
+
+    /*
+    * Streaming PNG writer: 8-bit RGB, rows handed in top to bottom are filtered (Sub), deflated
+    * and written out as IDAT chunks as the compressed bytes accumulate, so no more than one row
+    * and one chunk is ever held, whatever the image size.
+    */
+    static final class PngWriter implements AutoCloseable {
+        private static final byte[] SIGNATURE = {(byte)137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+        private static final int CHUNK = 1 << 16;
+
+        private final OutputStream out;
+        private final int width, height;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final byte[] row; // filter type byte, then 3 bytes per pixel
+        private final byte[] buf = new byte[CHUNK];
+        private int rowsWritten;
+
+        PngWriter(OutputStream out, int width, int height) throws IOException {
+            this.out = out; this.width = width; this.height = height;
+            this.row = new byte[1 + 3 * width];
+            out.write(SIGNATURE);
+            byte[] ihdr = new byte[13];
+            putInt(ihdr, 0, width);
+            putInt(ihdr, 4, height);
+            ihdr[8] = 8; // bit depth
+            ihdr[9] = 2; // color type: RGB
+            chunk("IHDR", ihdr, ihdr.length);
+        }
+
+        // 'rows' rows of 0xRRGGBB pixels starting at rgb[off], row stride 'width'
+        void writeRows(int[] rgb, int off, int rows) throws IOException {
+            for(int r = 0; r < rows; r++, rowsWritten++){
+                row[0] = 1; // Sub: each byte minus the same channel of the pixel to its left
+                int prev = 0;
+                for(int x = 0, i = off + r * width, b = 1; x < width; x++, i++, b += 3){
+                    int c = rgb[i];
+                    row[b] = (byte)((c >> 16) - (prev >> 16));
+                    row[b + 1] = (byte)((c >> 8) - (prev >> 8));
+                    row[b + 2] = (byte)(c - prev);
+                    prev = c;
+                }
+                deflater.setInput(row);
+                while(!deflater.needsInput()) drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            int n = deflater.deflate(buf, 0, buf.length);
+            if(n > 0) chunk("IDAT", buf, n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(rowsWritten != height) throw new IOException("wrote " + rowsWritten + " of " + height + " rows");
+            deflater.finish();
+            while(!deflater.finished()) drain();
+            deflater.end();
+            chunk("IEND", buf, 0);
+            out.close();
+        }
+
+        private void chunk(String type, byte[] data, int len) throws IOException {
+            byte[] head = new byte[8];
+            putInt(head, 0, len);
+            for(int i = 0; i < 4; i++) head[4 + i] = (byte)type.charAt(i);
+            CRC32 crc = new CRC32();
+            crc.update(head, 4, 4);
+            crc.update(data, 0, len);
+            byte[] tail = new byte[4];
+            putInt(tail, 0, (int)crc.getValue());
+            out.write(head);
+            out.write(data, 0, len);
+            out.write(tail);
+        }
+
+        private static void putInt(byte[] b, int off, int v){
+            b[off] = (byte)(v >>> 24); b[off + 1] = (byte)(v >>> 16);
+            b[off + 2] = (byte)(v >>> 8); b[off + 3] = (byte)v;
+        }
+    }
+
+    /*
+    * Headless poster renderer: renders a view of any size in horizontal strips, each split
+    * across the cores, and streams every strip into a PNG as soon as it is done, so memory
+    * stays at one strip whatever the image size. Centers are read as exact decimals, so deep
+    * views take the perturbation path like they do on screen.
+    *   java FractalVisualizer --render poster.png --size 32000x32000 --center -0.743643887,0.131825904
+    *       --scale 1e-6 --iter 5000 [--julia cr,ci] [--palette fire] [--strip 64]
+    * A malformed option prints the usage line and exits with status 2.
+    */
+    static final String POSTER_USAGE = "usage: java FractalVisualizer --render <file.png> [--size WxH]"
+            + " [--center re,im] [--scale s] [--iter n] [--julia cr,ci] [--palette name] [--strip rows]";
+
+    static void renderPoster(String[] args) throws Exception {
+        final PosterOptions options;
+        try {
+            options = PosterOptions.parse(args);
+        } catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println(POSTER_USAGE);
+            System.exit(2);
+            return;
+        }
+        renderPoster(options);
+    }
+
+    // --render's options, checked before any work starts
+    static final class PosterOptions {
+        String file;
+        Palette palette;
+        int width = W, height = H, maxIter = 400, stripRows = 64;
+        BigDecimal cx = new BigDecimal("-0.5"), cy = BigDecimal.ZERO;
+        FloatExp scale = FloatExp.of(3.0);
+        double jc = 0, ji = 0;
+        boolean julia = false;
+
+        static PosterOptions parse(String[] args){
+            final PosterOptions o = new PosterOptions();
+            for(int i = 0; i < args.length; i++){
+                String a = args[i];
+                if(i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + a);
+                String v = args[++i];
+                switch(a){
+                    case "--render": o.file = v; break;
+                    case "--size": {
+                        String[] wh = pair(a, v.toLowerCase(), "x");
+                        o.width = positive(a, wh[0]); o.height = positive(a, wh[1]);
+                        break;
+                    }
+                    case "--center": {
+                        String[] c = pair(a, v, ",");
+                        o.cx = decimal(a, c[0]); o.cy = decimal(a, c[1]);
+                        break;
+                    }
+                    case "--scale": {
+                        BigDecimal d = decimal(a, v);
+                        if(d.signum() <= 0) throw new IllegalArgumentException(a + " must be positive: " + v);
+                        o.scale = FloatExp.of(d);
+                        break;
+                    }
+                    case "--iter": o.maxIter = positive(a, v); break;
+                    case "--julia": {
+                        String[] c = pair(a, v, ",");
+                        o.julia = true; o.jc = decimal(a, c[0]).doubleValue(); o.ji = decimal(a, c[1]).doubleValue();
+                        break;
+                    }
+                    case "--palette": {
+                        for(Palette p : Palette.available()) if(p.name.equalsIgnoreCase(v)) o.palette = p;
+                        if(o.palette == null) throw new IllegalArgumentException("unknown palette " + v);
+                        break;
+                    }
+                    case "--strip": o.stripRows = positive(a, v); break;
+                    default: throw new IllegalArgumentException("unknown option " + a);
+                }
+            }
+            if(o.file == null) throw new IllegalArgumentException("--render <file.png> is required");
+            if(o.palette == null){ // the window's startup palette, as paletteIndex starts
+                final List<Palette> palettes = Palette.available();
+                o.palette = palettes.get(palettes.size() - 1);
+            }
+            return o;
+        }
+
+        // "a<sep>b" with both halves present
+        private static String[] pair(String opt, String v, String sep){
+            String[] p = v.split(sep, -1);
+            if(p.length != 2 || p[0].isBlank() || p[1].isBlank()){
+                throw new IllegalArgumentException(opt + " expects two values separated by '" + sep + "': " + v);
+            }
+            return p;
+        }
+
+        private static int positive(String opt, String v){
+            final int n;
+            try {
+                n = Integer.parseInt(v.trim());
+            } catch(NumberFormatException e){
+                throw new IllegalArgumentException(opt + " expects a whole number: " + v);
+            }
+            if(n <= 0) throw new IllegalArgumentException(opt + " must be positive: " + v);
+            return n;
+        }
+
+        private static BigDecimal decimal(String opt, String v){
+            try {
+                return new BigDecimal(v.trim());
+            } catch(NumberFormatException e){
+                throw new IllegalArgumentException(opt + " expects a number: " + v);
+            }
+        }
+    }
+
+    static void renderPoster(PosterOptions o) throws Exception {
+        final String file = o.file;
+        final int width = o.width, height = o.height, maxIter = o.maxIter, stripRows = o.stripRows;
+        final View view = new View(o.cx.doubleValue(), o.cy.doubleValue(), o.cx, o.cy, o.scale, width, height, maxIter,
+                o.julia, o.jc, o.ji);
+        final ColorTable colors = new ColorTable(o.palette, maxIter);
+        final Kernel kernel = Kernel.fromProperty();
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final int[] strip = new int[width * stripRows];
+        final long t0 = System.nanoTime();
+        try(PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), width, height)){
+            for(int sy = 0; sy < height; sy += stripRows){
+                final int y0 = sy, rows = Math.min(stripRows, height - sy);
+                List<Callable<Void>> parts = new ArrayList<>();
+                final int per = (rows + threads - 1) / threads;
+                for(int r0 = 0; r0 < rows; r0 += per){
+                    final int from = r0, to = Math.min(rows, r0 + per);
+                    parts.add(() -> {
+                        final int w = view.width;
+                        final int[] iters = new int[w];
+                        final double[] mag2 = new double[w];
+                        for(int r = from; r < to; r++){
+                            escapeSpan(kernel, view, y0 + r, 0, 1, w, iters, mag2);
+                            for(int x = 0, i = r * w; x < w; x++, i++){
+                                strip[i] = iters[x] >= view.maxIter ? 0x000000 : colors.color((float)smoothIter(iters[x], mag2[x]), 0); // float like IterFrame.nu
+                            }
+                        }
+                        return null;
+                    });
+                }
+                for(Future<Void> f : workers.invokeAll(parts)) f.get();
+                png.writeRows(strip, 0, rows);
+                System.err.printf("\r%s: %d%%", file, (int)(100L * (y0 + rows) / height));
+            }
+        } finally {
+            workers.shutdown();
+        }
+        final double sec = (System.nanoTime() - t0) / 1e9;
+        System.err.printf("%n%dx%d in %.1f s (%.2f Mpix/s)%s%n", width, height, sec, (double)width * height / sec / 1e6,
+                ", " + view.engine(kernel) + (view.references() > 1 ? ", " + view.references() + " references" : ""));
+    }
+
+    /*
+    * Drag-storm soak: scripted drags and wheel notches at mouse-event rate, as the handlers would
+    * deliver them, reporting the allocation rate, GC activity, frame pool reuse, input-to-pixel
+    * latency and the telemetry totals. Run it again with -Dfractal.framePool=0 to see the cost of allocating a frame per
+    * render, or with -Dfractal.pacing=false to render on every event.
+    */
+    static void soak() throws Exception {
+        final FractalVisualizer v = new FractalVisualizer();
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final int warmupEvents = 250, events = 1500, eventMillis = 8;
+        for(int round = 0; round < 2; round++){
+            final boolean measured = round == 1;
+            final long bytes0 = allocatedBytes(threads);
+            long gcCount0 = 0, gcMillis0 = 0;
+            for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+                gcCount0 += gc.getCollectionCount();
+                gcMillis0 += gc.getCollectionTime();
+            }
+            final long alloc0 = v.frames.allocated.get(), reused0 = v.frames.reused.get();
+            final int renders0 = v.renderId.get();
+            v.inputLatency.reset();
+            v.telemetry.reset();
+            final long t0 = System.nanoTime();
+            final int n = measured ? events : warmupEvents;
+            for(int i = 0; i < n; i++){
+                final int e = i;
+                SwingUtilities.invokeAndWait(() -> {
+                    if(e % 25 == 24){
+                        // one wheel notch, in and out in turn, around a point off center
+                        v.zoomAt(v.canvasWidth() / 3, v.canvasHeight() / 3,
+                                (e / 25) % 2 == 0 ? 1 / v.zoomFactorPerNotch : v.zoomFactorPerNotch);
+                    } else {
+                        // a drag that circles around, a few pixels per event
+                        double a = e * 0.05;
+                        int dx = (int)Math.round(6 * Math.cos(a)), dy = (int)Math.round(6 * Math.sin(a));
+                        v.moveCenter(-dx / (double)v.canvasWidth(), -dy / (double)v.canvasWidth());
+                    }
+                    v.requestRender();
+                });
+                Thread.sleep(eventMillis);
+            }
+            while(v.frame != v.lastFull || !v.lastFull.view.scale.equals(v.scale)) Thread.sleep(5);
+            final double seconds = (System.nanoTime() - t0) / 1e9;
+            if(!measured) continue;
+            long gcCount = -gcCount0, gcMillis = -gcMillis0;
+            for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+                gcCount += gc.getCollectionCount();
+                gcMillis += gc.getCollectionTime();
+            }
+            final double mb = (allocatedBytes(threads) - bytes0) / 1e6;
+            System.out.printf("soak: %d events in %.1f s, %d renders, frame pool capacity %d, pacing %s%n",
+                    n, seconds, v.renderId.get() - renders0, v.frames.capacity, PACING ? "on" : "off");
+            System.out.printf("  allocated %.0f MB (%.1f MB/s, %.2f MB per event)%n", mb, mb / seconds, mb / n);
+            System.out.printf("  GC: %d collections, %d ms total%n", gcCount, gcMillis);
+            System.out.printf("  frames: %d allocated, %d reused; %d tasks purged%n",
+                    v.frames.allocated.get() - alloc0, v.frames.reused.get() - reused0, v.pool.purged.get());
+            System.out.printf("  input to pixel: mean %.1f ms, p50 %.0f ms, p95 %.0f ms, max %.0f ms%n", v.inputLatency.mean(),
+                    v.inputLatency.percentile(0.5), v.inputLatency.percentile(0.95), v.inputLatency.max());
+            System.out.println("  " + v.telemetry.summary());
+        }
+    }
+
+    // bytes allocated so far by all live threads
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads){
+        long sum = 0;
+        for(long b : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) if(b > 0) sum += b;
+        return sum;
+    }
+
+    // Entry point
+    public static void main(String[] args) throws Exception {
+        if(args.length > 0 && args[0].equals("--bench")){
+            benchWrites();
+            bench();
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--bench-matrix")){
+            benchMatrix();
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--check-perturbation")){
+            checkPerturbation();
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--soak")){
+            soak();
+            System.exit(0);
+        }
+        if(args.length > 0 && args[0].equals("--render")){
+            renderPoster(args);
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             JFrame f = new JFrame("Fractal Visualizer — Mandelbrot & Julia");
             FractalVisualizer panel = new FractalVisualizer();
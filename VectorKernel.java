@@ -0,0 +1,82 @@
+/*
+ VectorKernel.java — optional SIMD escape-time kernel for FractalVisualizer (-Dfractal.kernel=vector)
+
+ Needs the incubating Vector API (JDK 16+), so it is compiled and run separately:
+   javac --add-modules jdk.incubator.vector VectorKernel.java
+   java --add-modules jdk.incubator.vector -Dfractal.kernel=vector FractalVisualizer
+ Without it FractalVisualizer falls back to the scalar kernel. It pays off where pixels run long
+ before escaping; with cycle detection on, a block waits for its slowest lane, so compare with --bench.
+*/
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+* One DoubleVector of pixels escapes at a time, all lanes in lockstep from iteration 0, so
+* Brent's cycle test can share its schedule (lam, power) across the block. Lanes that escape or
+* fall into a cycle are masked out until the whole block is done; the row's tail, shorter than a
+* vector, goes through the scalar kernel. Same arithmetic as Kernel.SCALAR, so the counts match
+* it exactly.
+*/
+public final class VectorKernel implements FractalVisualizer.RowEscaper {
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public long escapeRow(double[] re, double im, int n, int maxIter, boolean julia, double jc, double ji,
+                          double cycleEps, int[] iters, double[] mag2){
+        final int lanes = SPECIES.length();
+        final DoubleVector four = DoubleVector.broadcast(SPECIES, 4.0), one = DoubleVector.broadcast(SPECIES, 1.0);
+        final DoubleVector y0 = DoubleVector.broadcast(SPECIES, im);
+        final DoubleVector cy = julia ? DoubleVector.broadcast(SPECIES, ji) : y0;
+        final double[] counts = new double[lanes], m2 = new double[lanes];
+        long executed = 0;
+        int i = 0;
+        for(; i + lanes <= n; i += lanes){
+            DoubleVector zx = DoubleVector.fromArray(SPECIES, re, i), zy = y0;
+            final DoubleVector cx = julia ? DoubleVector.broadcast(SPECIES, jc) : zx;
+            DoubleVector zx2 = zx.mul(zx), zy2 = zy.mul(zy);
+            DoubleVector sx = zx, sy = zy; // Brent: saved points, replaced every time lam reaches power
+            DoubleVector count = DoubleVector.zero(SPECIES);
+            VectorMask<Double> active = zx2.add(zy2).compare(VectorOperators.LE, four);
+            VectorMask<Double> cycle = SPECIES.maskAll(false);
+            int lam = 0, power = 1;
+            for(int iter = 0; iter < maxIter && active.anyTrue(); iter++){
+                final DoubleVector ny = zx.mul(2.0).mul(zy).add(cy);
+                final DoubleVector nx = zx2.sub(zy2).add(cx);
+                zx = zx.blend(nx, active);
+                zy = zy.blend(ny, active);
+                zx2 = zx.mul(zx);
+                zy2 = zy.mul(zy);
+                count = count.add(one, active);
+                final VectorMask<Double> cycled = active
+                        .and(zx.sub(sx).abs().compare(VectorOperators.LT, cycleEps))
+                        .and(zy.sub(sy).abs().compare(VectorOperators.LT, cycleEps));
+                cycle = cycle.or(cycled);
+                active = active.andNot(cycled).and(zx2.add(zy2).compare(VectorOperators.LE, four));
+                if(++lam == power){
+                    sx = zx; sy = zy;
+                    power <<= 1; lam = 0;
+                }
+            }
+            count.intoArray(counts, 0);
+            zx2.add(zy2).intoArray(m2, 0);
+            for(int l = 0; l < lanes; l++){
+                executed += (long)counts[l];
+                iters[i + l] = cycle.laneIsSet(l) ? maxIter : (int)counts[l];
+                mag2[i + l] = m2[l];
+            }
+        }
+        if(i < n){
+            final int tail = n - i;
+            final double[] tailRe = java.util.Arrays.copyOfRange(re, i, n), tailMag2 = new double[tail];
+            final int[] tailIters = new int[tail];
+            executed += FractalVisualizer.Kernel.SCALAR.escapeRow(tailRe, im, tail, maxIter, julia, jc, ji, cycleEps,
+                    tailIters, tailMag2);
+            System.arraycopy(tailIters, 0, iters, i, tail);
+            System.arraycopy(tailMag2, 0, mag2, i, tail);
+        }
+        return executed;
+    }
+}